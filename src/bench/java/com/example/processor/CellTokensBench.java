@@ -0,0 +1,110 @@
+package com.example.processor;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Per-cell cost of {@link CellTokens#classify} next to the regex-based classify it replaced.
+ * Cells are sampled from values found in survey sheets; each pass classifies all of them and the
+ * best pass is reported. Both classifiers must agree on every sampled value.
+ *
+ * Run with the classes of src/main/java on the classpath:
+ * {@code java com.example.processor.CellTokensBench [passes] [cells]} (defaults 60 and 65536).
+ */
+public class CellTokensBench {
+
+    private static final String[] SURVEY_VALUES = {
+        "", "", "", "", "", "1:Good", "2:Bad", "3:Not Related", "4:Fair", "①", "②", "１", "3",
+        "サブ1", "comment 3", "1.項目1", "IV.品質", "＜", "＞", "<1>", "＜2＞", "3.①", "desc a",
+        "※備考", "会社名", "ACME Inc.XX", "06/15/2023", "25", "extra", "要望0",
+        "5.より満足いただくために、弊社が", "評価", "コメント", "評価項目", "説明", "ご注意ください"
+    };
+
+    public static void main(String[] args) {
+        int passes = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        int cellCount = args.length > 1 ? Integer.parseInt(args[1]) : 1 << 16;
+
+        String[] cells = new String[cellCount];
+        Random random = new Random(1);
+        for (int i = 0; i < cells.length; i++) {
+            // Copies, so equals() cannot succeed on identity alone
+            cells[i] = new String(SURVEY_VALUES[random.nextInt(SURVEY_VALUES.length)]);
+        }
+        for (String value : SURVEY_VALUES) {
+            if (CellTokens.classify(value) != RegexTokens.classify(value)) {
+                throw new IllegalStateException("Classifiers disagree on \"" + value + "\": "
+                        + CellTokens.classify(value) + " vs " + RegexTokens.classify(value));
+            }
+        }
+
+        System.out.println("JDK " + System.getProperty("java.version") + ", " + cellCount + " cells, best of " + passes + " passes");
+        report("regex classify", measure(cells, passes, true), cellCount);
+        report("CellTokens.classify", measure(cells, passes, false), cellCount);
+    }
+
+    private static long measure(String[] cells, int passes, boolean regex) {
+        long best = Long.MAX_VALUE;
+        int sink = 0;
+        for (int pass = 0; pass < passes; pass++) {
+            long start = System.nanoTime();
+            for (String value : cells) {
+                sink += regex ? RegexTokens.classify(value) : CellTokens.classify(value);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        // Keeps the JIT from dropping the loop
+        if (sink == 42) {
+            System.out.println();
+        }
+        return best;
+    }
+
+    private static void report(String name, long nanos, int cellCount) {
+        System.out.printf("%-22s %8.1f ns/cell%n", name, nanos / (double) cellCount);
+    }
+
+    // CellTokens.classify as it was with regexes, before the hand-written checks
+    private static final class RegexTokens {
+        private static final Pattern MAIN_CRITERION_PATTERN = Pattern.compile("^(?:[0-9０-９]+\\.|(?:I{1,3}|IV|V|VI|VII|VIII)\\.)[^①②③④⑤⑥⑦].*");
+        private static final Pattern PRIORITY_PATTERN = Pattern.compile("^(?:[１２３４１-４]|[1-4])\\.[①②③④⑤⑥⑦]|(?:<|＜)(?:[1-4]|[１-４])(?:>|＞)");
+        private static final Pattern EVALUATION_PATTERN = Pattern.compile("^\\d+:(?:Not Related|[A-Za-z]+)$");
+        private static final Pattern NOTE_PATTERN = Pattern.compile("^(※.*|.*(?:お願い|注意|注|備考|説明|選択ボックス).*)", Pattern.UNICODE_CASE);
+        private static final Pattern SUB_NUMBER_PATTERN = Pattern.compile("^[①②③④⑤⑥⑦１-７1-7]");
+        private static final Pattern ANGLE_MARK_PATTERN = Pattern.compile("^[＜＞]");
+
+        static int classify(String value) {
+            if (value.isEmpty()) {
+                return CellTokens.EMPTY;
+            }
+            int tokens = 0;
+            if ("評価項目".equals(value)) {
+                tokens |= CellTokens.EVAL_TABLE_HEADER;
+            }
+            String trimmed = value.trim();
+            if ("評価".equals(trimmed)) {
+                tokens |= CellTokens.EVAL_COLUMN_HEADER;
+            } else if ("コメント".equals(trimmed)) {
+                tokens |= CellTokens.COMMENT_COLUMN_HEADER;
+            }
+            if (EVALUATION_PATTERN.matcher(value).matches()) {
+                tokens |= CellTokens.EVALUATION;
+            }
+            if (SUB_NUMBER_PATTERN.matcher(value).matches()) {
+                tokens |= CellTokens.SUB_NUMBER;
+            }
+            if (ANGLE_MARK_PATTERN.matcher(value).matches()) {
+                tokens |= CellTokens.ANGLE_MARK;
+            }
+            if (MAIN_CRITERION_PATTERN.matcher(value).find()) {
+                tokens |= CellTokens.MAIN_CRITERION;
+            }
+            if (PRIORITY_PATTERN.matcher(value).matches()) {
+                tokens |= CellTokens.PRIORITY_HEADER;
+            }
+            if (NOTE_PATTERN.matcher(value).matches()) {
+                tokens |= CellTokens.NOTE;
+            }
+            return tokens;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.example.cli;
+
+import com.example.processor.ExcelProcessor;
+import com.example.processor.IngestionOptions;
+import com.example.processor.IngestionProgress;
+import com.example.util.DatabaseConnection;
+import com.example.util.SchemaMigrations;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Imports historical .xlsx files straight into the database through {@link ExcelProcessor},
+ * without going through /upload. The source is a directory (searched recursively) or a .zip
+ * archive, imported by a fixed number of threads over a connection pool capped at
+ * {@code --connections}. Every imported file is appended to a checkpoint file, so running the
+ * same command again after an interruption skips the files that were already stored. Logging
+ * goes through the application's logback configuration.
+ *
+ * <pre>
+ * java -Dlogback.configurationFile=WEB-INF/logback.xml -cp "WEB-INF/classes:WEB-INF/lib/*" com.example.cli.BulkImporter SOURCE
+ *      [--threads N] [--connections N] [--checkpoint FILE]
+ * </pre>
+ */
+public class BulkImporter {
+
+    private static final int PROGRESS_EVERY_FILES = 100;
+
+    private final int threads;
+    private final int connections;
+    private final BufferedWriter checkpoint;
+    private final Set<String> done;
+
+    private final AtomicInteger filesImported = new AtomicInteger();
+    private final AtomicInteger filesUnchanged = new AtomicInteger();
+    private final AtomicInteger filesFailed = new AtomicInteger();
+    private final AtomicLong sheetsStored = new AtomicLong();
+    private final AtomicLong rowsStored = new AtomicLong();
+
+    private BulkImporter(int threads, int connections, BufferedWriter checkpoint, Set<String> done) {
+        this.threads = threads;
+        this.connections = connections;
+        this.checkpoint = checkpoint;
+        this.done = done;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            usage();
+            return;
+        }
+        Path source = Paths.get(args[0]);
+        int threads = Runtime.getRuntime().availableProcessors();
+        int connectionCount = -1;
+        Path checkpointFile = null;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--connections" -> connectionCount = Integer.parseInt(args[++i]);
+                case "--checkpoint" -> checkpointFile = Paths.get(args[++i]);
+                default -> {
+                    usage();
+                    return;
+                }
+            }
+        }
+        if (!Files.exists(source) || threads < 1) {
+            usage();
+            return;
+        }
+        // More connections than threads would never be used
+        connectionCount = connectionCount < 1 ? threads : Math.min(connectionCount, threads);
+        if (checkpointFile == null) {
+            checkpointFile = Paths.get(source.getFileName() + ".imported");
+        }
+
+        Set<String> done = new HashSet<>();
+        if (Files.exists(checkpointFile)) {
+            done.addAll(Files.readAllLines(checkpointFile, StandardCharsets.UTF_8));
+            System.out.println("Resuming: " + done.size() + " files already imported according to " + checkpointFile);
+        }
+
+        // The workers share the application's connection pool, sized to --connections
+        System.setProperty("db.pool.maxSize", String.valueOf(connectionCount));
+        System.setProperty("db.pool.minIdle", String.valueOf(connectionCount));
+        try (BufferedWriter checkpoint = Files.newBufferedWriter(checkpointFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            // Fails before walking the source if the database cannot be reached
+            try (Connection conn = DatabaseConnection.getConnection()) {
+                SchemaMigrations.migrate(conn);
+            }
+            BulkImporter importer = new BulkImporter(threads, connectionCount, checkpoint, done);
+            boolean ok = Files.isDirectory(source) ? importer.importDirectory(source) : importer.importZip(source);
+            if (!ok) {
+                System.exit(1);
+            }
+        } finally {
+            DatabaseConnection.shutdown();
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: BulkImporter <directory|archive.zip> [--threads N] [--connections N] [--checkpoint FILE]");
+        System.err.println("  --threads      files processed in parallel (default: number of CPUs)");
+        System.err.println("  --connections  database connections shared by the threads (default: one per thread)");
+        System.err.println("  --checkpoint   list of imported files, used to resume (default: <source name>.imported)");
+        System.exit(2);
+    }
+
+    private boolean importDirectory(Path dir) throws Exception {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            files = walk.filter(Files::isRegularFile).filter(p -> isWorkbookName(p.getFileName().toString()))
+                    .sorted().collect(Collectors.toList());
+        }
+        List<ImportTask> tasks = new ArrayList<>();
+        for (Path file : files) {
+            String key = dir.relativize(file).toString().replace('\\', '/');
+            tasks.add(new ImportTask(key, file.getFileName().toString(), () -> file, false));
+        }
+        return run(tasks);
+    }
+
+    private boolean importZip(Path archive) throws Exception {
+        try (ZipFile zip = new ZipFile(archive.toFile(), StandardCharsets.UTF_8)) {
+            List<ImportTask> tasks = new ArrayList<>();
+            for (ZipEntry entry : zip.stream().filter(e -> !e.isDirectory()).sorted((a, b) -> a.getName().compareTo(b.getName())).toList()) {
+                String fileName = Paths.get(entry.getName()).getFileName().toString();
+                if (!isWorkbookName(fileName)) {
+                    continue;
+                }
+                // Each entry is copied out when its turn comes, so only the files in progress take disk space
+                tasks.add(new ImportTask(entry.getName(), fileName, () -> {
+                    Path spooled = Files.createTempFile("import-", ".xlsx");
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        Files.copy(in, spooled, StandardCopyOption.REPLACE_EXISTING);
+                    } catch (IOException e) {
+                        Files.deleteIfExists(spooled);
+                        throw e;
+                    }
+                    return spooled;
+                }, true));
+            }
+            return run(tasks);
+        }
+    }
+
+    private static boolean isWorkbookName(String fileName) {
+        // "~$" files are Excel's lock files next to open workbooks
+        return fileName.toLowerCase().endsWith(".xlsx") && !fileName.startsWith("~$");
+    }
+
+    private boolean run(List<ImportTask> tasks) throws InterruptedException {
+        List<ImportTask> pending = tasks.stream().filter(t -> !done.contains(t.key)).toList();
+        System.out.println("Found " + tasks.size() + " workbooks, " + pending.size() + " to import with "
+                + threads + " threads and " + connections + " connections");
+
+        long start = System.nanoTime();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        for (ImportTask task : pending) {
+            workers.execute(() -> importFile(task, pending.size(), start));
+        }
+        workers.shutdown();
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+        double seconds = Math.max((System.nanoTime() - start) / 1e9, 0.001);
+        int files = filesImported.get() + filesUnchanged.get();
+        System.out.printf("Imported %d files (%d unchanged, %d failed), %d sheets, %d rows in %.1f s%n",
+                files, filesUnchanged.get(), filesFailed.get(), sheetsStored.get(), rowsStored.get(), seconds);
+        System.out.printf("Throughput: %.2f files/s, %.2f sheets/s, %.1f rows/s%n",
+                files / seconds, sheetsStored.get() / seconds, rowsStored.get() / seconds);
+        if (filesFailed.get() > 0) {
+            System.out.println(filesFailed.get() + " files failed and are not in the checkpoint; run the same command again to retry them");
+        }
+        return filesFailed.get() == 0;
+    }
+
+    private void importFile(ImportTask task, int total, long start) {
+        IngestionOptions options = new IngestionOptions();
+        options.streaming = true;
+        options.diffReuploads = true;
+        options.workbookTransaction = true;
+        options.reuseParsePlans = true;
+        options.progress = new IngestionProgress() {
+            @Override
+            public void sheetStored(String sheetName, int metadataRows, int evaluationRows) {
+                sheetsStored.incrementAndGet();
+                rowsStored.addAndGet(metadataRows + evaluationRows);
+            }
+        };
+
+        Path file = null;
+        try {
+            file = task.source.open();
+            ExcelProcessor.TemplateCreationResult result;
+            try (Connection conn = DatabaseConnection.getConnection()) {
+                result = ExcelProcessor.processExcelFile(conn, file, task.fileName, options);
+            }
+            if (result.unchanged) {
+                filesUnchanged.incrementAndGet();
+            } else {
+                filesImported.incrementAndGet();
+            }
+            markDone(task.key);
+        } catch (Exception e) {
+            filesFailed.incrementAndGet();
+            System.out.println("FAILED " + task.key + ": " + e);
+        } finally {
+            if (task.temporary && file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        int finished = filesImported.get() + filesUnchanged.get() + filesFailed.get();
+        if (finished % PROGRESS_EVERY_FILES == 0 || finished == total) {
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("[%d/%d] %.1f files/s, %d rows so far%n", finished, total, finished / seconds, rowsStored.get());
+        }
+    }
+
+    // One line per file, written once the file is committed
+    private synchronized void markDone(String key) throws IOException {
+        checkpoint.write(key);
+        checkpoint.newLine();
+        checkpoint.flush();
+    }
+
+    private interface FileSource {
+        Path open() throws IOException;
+    }
+
+    private static class ImportTask {
+        final String key;
+        final String fileName;
+        final FileSource source;
+        final boolean temporary;
+
+        ImportTask(String key, String fileName, FileSource source, boolean temporary) {
+            this.key = key;
+            this.fileName = fileName;
+            this.source = source;
+            this.temporary = temporary;
+        }
+    }
+}
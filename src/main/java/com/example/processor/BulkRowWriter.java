@@ -0,0 +1,219 @@
+package com.example.processor;
+
+import com.example.util.DatabaseConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Insert path for freshly parsed rows. Rows are sent as multi-row
+ * {@code INSERT ... VALUES (...),(...)} statements of up to {@link #INSERT_CHUNK_ROWS} rows;
+ * sheets with at least {@link #LOAD_DATA_MIN_ROWS} evaluation rows are streamed with
+ * {@code LOAD DATA LOCAL INFILE} instead, one spool file in {@link DatabaseConnection#LOAD_DATA_DIR}
+ * per chunk. If the server refuses LOAD DATA (local_infile off), the writer falls back to
+ * multi-row inserts for good; any other error fails the insert like an INSERT would.
+ * Rows keep their order, so auto-increment IDs follow the sheet as before. Rows, chunks and time
+ * of both paths are added up in {@link IngestionMetrics}.
+ */
+class BulkRowWriter {
+    private static final Logger logger = LoggerFactory.getLogger(BulkRowWriter.class);
+
+    static final int INSERT_CHUNK_ROWS = 500;
+    static final int LOAD_DATA_MIN_ROWS = 20_000;
+    static final int LOAD_DATA_CHUNK_ROWS = 50_000;
+
+    private static final String EVALUATION_COLUMNS = "(ResponseID, MainItem, SubItem, Evaluation, Comment)";
+    private static final String[] EVALUATION_FIELDS = {"MainItem", "SubItem", "Evaluation", "Comment"};
+
+    // ER_NOT_ALLOWED_COMMAND, ER_CLIENT_LOCAL_FILES_DISABLED: local_infile is off on one side
+    private static final int[] LOAD_DATA_REFUSED_CODES = {1148, 3948};
+
+    private static volatile boolean loadDataRefused = false;
+
+    static void insertEvaluationData(Connection conn, int responseId, List<Map<String, String>> evalData) throws SQLException {
+        insertEvaluationData(conn, Collections.singletonMap(responseId, evalData));
+    }
+
+    // Rows of several responses in one go, e.g. all sheets of a workbook; map order is insert order
+    static void insertEvaluationData(Connection conn, Map<Integer, List<Map<String, String>>> evalDataByResponse) throws SQLException {
+        int total = 0;
+        for (List<Map<String, String>> evalData : evalDataByResponse.values()) {
+            total += evalData.size();
+        }
+        int[] responseIds = new int[total];
+        List<String[]> rows = new ArrayList<>(total);
+        for (Map.Entry<Integer, List<Map<String, String>>> group : evalDataByResponse.entrySet()) {
+            for (Map<String, String> entry : group.getValue()) {
+                String[] row = new String[EVALUATION_FIELDS.length];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = entry.get(EVALUATION_FIELDS[i]);
+                }
+                responseIds[rows.size()] = group.getKey();
+                rows.add(row);
+            }
+        }
+
+        if (rows.size() >= LOAD_DATA_MIN_ROWS && !loadDataRefused
+                && loadData(conn, "EvaluationData", EVALUATION_COLUMNS, responseIds, rows)) {
+            return;
+        }
+        insertChunks(conn, "EvaluationData", EVALUATION_COLUMNS, responseIds, rows);
+    }
+
+    static void insertMetadata(Connection conn, int responseId, Map<String, String> metadata) throws SQLException {
+        List<String[]> rows = new ArrayList<>(metadata.size());
+        for (Map.Entry<String, String> entry : metadata.entrySet()) {
+            rows.add(new String[]{entry.getKey(), entry.getValue()});
+        }
+        int[] responseIds = new int[rows.size()];
+        Arrays.fill(responseIds, responseId);
+        insertChunks(conn, "ResponseMetadata", "(ResponseID, HeaderKey, HeaderValue)", responseIds, rows);
+    }
+
+    private static void insertChunks(Connection conn, String table, String columns, int[] responseIds, List<String[]> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        int fieldCount = rows.get(0).length;
+        PreparedStatement fullChunk = null;
+        try {
+            for (int start = 0, chunk = 1; start < rows.size(); start += INSERT_CHUNK_ROWS, chunk++) {
+                int size = Math.min(INSERT_CHUNK_ROWS, rows.size() - start);
+                long begin = System.nanoTime();
+                if (size == INSERT_CHUNK_ROWS) {
+                    if (fullChunk == null) {
+                        fullChunk = conn.prepareStatement(insertSql(table, columns, fieldCount, size));
+                    }
+                    bindAndExecute(fullChunk, responseIds, rows, start, size);
+                } else {
+                    try (PreparedStatement lastChunk = conn.prepareStatement(insertSql(table, columns, fieldCount, size))) {
+                        bindAndExecute(lastChunk, responseIds, rows, start, size);
+                    }
+                }
+                long elapsed = System.nanoTime() - begin;
+                IngestionMetrics.recordInsertChunk(size, elapsed);
+                logger.debug("Inserted {} chunk {} ({} rows) starting at ResponseID={} in {} ms",
+                        table, chunk, size, responseIds[start], elapsed / 1_000_000);
+            }
+        } finally {
+            if (fullChunk != null) {
+                fullChunk.close();
+            }
+        }
+    }
+
+    private static String insertSql(String table, String columns, int fieldCount, int rowCount) {
+        String rowPlaceholders = "(?" + ", ?".repeat(fieldCount) + ")";
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(' ').append(columns).append(" VALUES ");
+        sql.append(String.join(", ", Collections.nCopies(rowCount, rowPlaceholders)));
+        return sql.toString();
+    }
+
+    private static void bindAndExecute(PreparedStatement pstmt, int[] responseIds, List<String[]> rows, int start, int size) throws SQLException {
+        int index = 1;
+        for (int r = start; r < start + size; r++) {
+            pstmt.setInt(index++, responseIds[r]);
+            for (String value : rows.get(r)) {
+                pstmt.setString(index++, value);
+            }
+        }
+        pstmt.executeUpdate();
+    }
+
+    // Returns false if the first chunk could not be loaded, in which case nothing has been written
+    private static boolean loadData(Connection conn, String table, String columns, int[] responseIds, List<String[]> rows) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (int start = 0, chunk = 1; start < rows.size(); start += LOAD_DATA_CHUNK_ROWS, chunk++) {
+                int size = Math.min(LOAD_DATA_CHUNK_ROWS, rows.size() - start);
+                long begin = System.nanoTime();
+                Path spoolFile;
+                try {
+                    spoolFile = Files.createTempFile(DatabaseConnection.LOAD_DATA_DIR, "rows-", ".tsv");
+                } catch (IOException e) {
+                    if (start > 0) {
+                        throw new SQLException("Could not spool rows for LOAD DATA: " + e.getMessage(), e);
+                    }
+                    logger.warn("LOAD DATA spool file could not be created, using multi-row INSERT", e);
+                    return false;
+                }
+                try {
+                    Files.write(spoolFile, toTsv(responseIds, rows, start, size));
+                    stmt.execute("LOAD DATA LOCAL INFILE '" + spoolFile.toString().replace('\\', '/').replace("'", "''") + "' INTO TABLE " + table
+                            + " CHARACTER SET utf8mb4 FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n' " + columns);
+                } catch (IOException e) {
+                    throw new SQLException("Could not spool rows for LOAD DATA: " + e.getMessage(), e);
+                } catch (SQLException e) {
+                    // Deadlocks, lock wait timeouts and the like are rethrown: InnoDB may already
+                    // have rolled the transaction back, so carrying on with INSERT is not safe
+                    if (start > 0 || !isLoadDataRefused(e)) {
+                        throw e;
+                    }
+                    loadDataRefused = true;
+                    logger.warn("LOAD DATA LOCAL INFILE unavailable, using multi-row INSERT from now on: {}", e.getMessage());
+                    return false;
+                } finally {
+                    try {
+                        Files.deleteIfExists(spoolFile);
+                    } catch (IOException e) {
+                        logger.warn("Could not delete LOAD DATA spool file {}", spoolFile, e);
+                    }
+                }
+                long elapsed = System.nanoTime() - begin;
+                IngestionMetrics.recordLoadDataChunk(size, elapsed);
+                logger.debug("Loaded {} chunk {} ({} rows) starting at ResponseID={} with LOAD DATA in {} ms",
+                        table, chunk, size, responseIds[start], elapsed / 1_000_000);
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLoadDataRefused(SQLException e) {
+        for (int code : LOAD_DATA_REFUSED_CODES) {
+            if (e.getErrorCode() == code) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Tab-separated rows in LOAD DATA's default escaping; null is written as \N
+    private static byte[] toTsv(int[] responseIds, List<String[]> rows, int start, int size) {
+        StringBuilder sb = new StringBuilder(size * 64);
+        for (int r = start; r < start + size; r++) {
+            sb.append(responseIds[r]);
+            for (String value : rows.get(r)) {
+                sb.append('\t');
+                if (value == null) {
+                    sb.append("\\N");
+                    continue;
+                }
+                for (int i = 0; i < value.length(); i++) {
+                    char c = value.charAt(i);
+                    switch (c) {
+                        case '\\': sb.append("\\\\"); break;
+                        case '\t': sb.append("\\t"); break;
+                        case '\n': sb.append("\\n"); break;
+                        case '\r': sb.append("\\r"); break;
+                        case '\0': sb.append("\\0"); break;
+                        default: sb.append(c);
+                    }
+                }
+            }
+            sb.append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
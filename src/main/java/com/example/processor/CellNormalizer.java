@@ -0,0 +1,159 @@
+package com.example.processor;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+/**
+ * Turns workbook cells into the normalized text the sheet scanners work on.
+ * One instance serves one workbook: the formatter, the date format and the formula
+ * evaluator are created once and reused for every cell. Not thread-safe; callers
+ * already serialize cell access on the workbook.
+ *
+ * With {@code useCachedFormulaValues}, formula cells are read from the result Excel stored
+ * in the file and only cells without one go through the evaluator, whose own cache keeps
+ * every result it computes for the rest of the workbook.
+ */
+class CellNormalizer {
+
+    private final Workbook workbook;
+    private final DataFormatter formatter = new DataFormatter();
+    private final SimpleDateFormat dateLikeFormat = new SimpleDateFormat("MM/dd/yyyy", Locale.US);
+    private final boolean useCachedFormulaValues;
+    private DataFormatter cachedResultFormatter;
+    private FormulaEvaluator evaluator;
+    int formulaCellsFromCache;
+    int formulaCellsEvaluated;
+
+    CellNormalizer(Workbook workbook, boolean useCachedFormulaValues) {
+        this.workbook = workbook;
+        this.useCachedFormulaValues = useCachedFormulaValues;
+    }
+
+    String getCellValue(Cell cell) {
+        if (cell == null) {
+            return "";
+        }
+
+        String value;
+        try {
+            switch (cell.getCellType()) {
+                case NUMERIC:
+                    double numericValue = cell.getNumericCellValue();
+                    // Serial numbers in the 1970-2099 range are shown as dates even without a date format
+                    if (!DateUtil.isCellDateFormatted(cell) && numericValue > 25569 && numericValue < 73050) {
+                        value = dateLikeFormat.format(DateUtil.getJavaDate(numericValue, false));
+                    } else {
+                        value = formatter.formatCellValue(cell);
+                    }
+                    break;
+
+                case STRING:
+                    value = cell.getStringCellValue();
+                    break;
+
+                case FORMULA:
+                    if (useCachedFormulaValues && hasCachedResult(cell)) {
+                        // Formatted exactly as an evaluated result of the same type would be
+                        value = cachedResultFormatter().formatCellValue(cell);
+                        formulaCellsFromCache++;
+                    } else {
+                        value = formatter.formatCellValue(cell, formulaEvaluator());
+                        formulaCellsEvaluated++;
+                    }
+                    break;
+
+                case BLANK:
+                    value = "";
+                    break;
+
+                default:
+                    value = formatter.formatCellValue(cell);
+                    break;
+            }
+        } catch (Exception e) {
+            value = formatter.formatCellValue(cell);
+        }
+
+        return normalize(value);
+    }
+
+    private static boolean hasCachedResult(Cell cell) {
+        // The raw value is the <v> element, absent when Excel never calculated the cell
+        return !(cell instanceof XSSFCell) || ((XSSFCell) cell).getRawValue() != null;
+    }
+
+    private DataFormatter cachedResultFormatter() {
+        if (cachedResultFormatter == null) {
+            cachedResultFormatter = new DataFormatter();
+            cachedResultFormatter.setUseCachedValuesForFormulaCells(true);
+        }
+        return cachedResultFormatter;
+    }
+
+    private FormulaEvaluator formulaEvaluator() {
+        if (evaluator == null) {
+            evaluator = workbook.getCreationHelper().createFormulaEvaluator();
+        }
+        return evaluator;
+    }
+
+    /**
+     * Trims the value, collapses runs of ASCII whitespace to one space, and maps each
+     * full-width space to a space, "．" to "." and "✕" to "XX", in one pass.
+     * Returns {@code value} itself when nothing changes.
+     */
+    static String normalize(String value) {
+        int start = 0;
+        int end = value.length();
+        while (start < end && value.charAt(start) <= ' ') start++;
+        while (end > start && value.charAt(end - 1) <= ' ') end--;
+
+        StringBuilder sb = null;
+        boolean inWhitespace = false;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (isAsciiWhitespace(c)) {
+                if (inWhitespace || c != ' ') {
+                    if (sb == null) sb = new StringBuilder(end - start).append(value, start, i);
+                    if (!inWhitespace) sb.append(' ');
+                } else if (sb != null) {
+                    sb.append(' ');
+                }
+                inWhitespace = true;
+                continue;
+            }
+            inWhitespace = false;
+
+            String replacement;
+            if (c == '　') {
+                replacement = " ";
+            } else if (c == '．') {
+                replacement = ".";
+            } else if (c == '✕') {
+                replacement = "XX";
+            } else {
+                if (sb != null) sb.append(c);
+                continue;
+            }
+            if (sb == null) sb = new StringBuilder(end - start + 1).append(value, start, i);
+            sb.append(replacement);
+        }
+
+        if (sb != null) {
+            return sb.toString();
+        }
+        return value.substring(start, end);
+    }
+
+    // The characters matched by \s without UNICODE_CHARACTER_CLASS
+    private static boolean isAsciiWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
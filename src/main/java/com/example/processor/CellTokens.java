@@ -0,0 +1,149 @@
+package com.example.processor;
+
+/**
+ * Token classes of a normalized cell value, stored as bit flags next to each cell in a
+ * {@link SheetGrid} so the sheet scanners test a flag instead of re-running the patterns.
+ * The checks are written out by hand; each comment gives the regex it stands for.
+ */
+final class CellTokens {
+
+    static final int EMPTY = 1;
+    static final int EVAL_TABLE_HEADER = 1 << 1;     // "評価項目"
+    static final int EVAL_COLUMN_HEADER = 1 << 2;    // "評価"
+    static final int COMMENT_COLUMN_HEADER = 1 << 3; // "コメント"
+    static final int EVALUATION = 1 << 4;            // "3:Good", "1:Not Related"
+    static final int SUB_NUMBER = 1 << 5;            // "①", "１", "1"
+    static final int ANGLE_MARK = 1 << 6;            // "＜" or "＞" on its own
+    static final int MAIN_CRITERION = 1 << 7;        // "1.xxx", "IV.xxx"
+    static final int PRIORITY_HEADER = 1 << 8;       // "<1>", "＜2＞", "1.①"
+    static final int NOTE = 1 << 9;                  // "※...", "...備考..."
+
+    private CellTokens() {
+    }
+
+    static int classify(String value) {
+        if (value.isEmpty()) {
+            return EMPTY;
+        }
+        int tokens = 0;
+        if ("評価項目".equals(value)) {
+            tokens |= EVAL_TABLE_HEADER;
+        }
+        String trimmed = value.trim();
+        if ("評価".equals(trimmed)) {
+            tokens |= EVAL_COLUMN_HEADER;
+        } else if ("コメント".equals(trimmed)) {
+            tokens |= COMMENT_COLUMN_HEADER;
+        }
+        if (isEvaluation(value)) {
+            tokens |= EVALUATION;
+        }
+        if (value.length() == 1) {
+            char c = value.charAt(0);
+            if (isCircledOneToSeven(c) || (c >= '１' && c <= '７') || (c >= '1' && c <= '7')) {
+                tokens |= SUB_NUMBER;
+            } else if (c == '＜' || c == '＞') {
+                tokens |= ANGLE_MARK;
+            }
+        }
+        if (isMainCriterion(value)) {
+            tokens |= MAIN_CRITERION;
+        }
+        if (isPriorityHeader(value)) {
+            tokens |= PRIORITY_HEADER;
+        }
+        if (isNote(value)) {
+            tokens |= NOTE;
+        }
+        return tokens;
+    }
+
+    // ^\d+:(?:Not Related|[A-Za-z]+)$
+    private static boolean isEvaluation(String value) {
+        int n = value.length();
+        int i = 0;
+        while (i < n && value.charAt(i) >= '0' && value.charAt(i) <= '9') i++;
+        if (i == 0 || i == n || value.charAt(i) != ':') {
+            return false;
+        }
+        i++;
+        if (value.startsWith("Not Related", i) && i + "Not Related".length() == n) {
+            return true;
+        }
+        if (i == n) {
+            return false;
+        }
+        for (; i < n; i++) {
+            char c = value.charAt(i);
+            if (!((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ^(?:[0-9０-９]+\.|(?:I{1,3}|IV|V|VI|VII|VIII)\.)[^①②③④⑤⑥⑦].*
+    private static boolean isMainCriterion(String value) {
+        int dot = value.indexOf('.');
+        if (dot <= 0 || dot + 1 >= value.length() || isCircledOneToSeven(value.charAt(dot + 1))) {
+            return false;
+        }
+        boolean allDigits = true;
+        for (int i = 0; i < dot && allDigits; i++) {
+            char c = value.charAt(i);
+            allDigits = (c >= '0' && c <= '9') || (c >= '０' && c <= '９');
+        }
+        if (allDigits) {
+            return true;
+        }
+        switch (value.substring(0, dot)) {
+            case "I": case "II": case "III": case "IV":
+            case "V": case "VI": case "VII": case "VIII":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // (?:[１-４]|[1-4])\.[①-⑦] or (?:<|＜)(?:[1-4]|[１-４])(?:>|＞), as the whole value
+    private static boolean isPriorityHeader(String value) {
+        if (value.length() != 3) {
+            return false;
+        }
+        char first = value.charAt(0);
+        char middle = value.charAt(1);
+        char last = value.charAt(2);
+        if (isOneToFour(first) && middle == '.' && isCircledOneToSeven(last)) {
+            return true;
+        }
+        return (first == '<' || first == '＜') && isOneToFour(middle) && (last == '>' || last == '＞');
+    }
+
+    // ^(※.*|.*(?:お願い|注意|注|備考|説明|選択ボックス).*) where '.' does not cross a line terminator
+    private static boolean isNote(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return false;
+            }
+        }
+        return value.charAt(0) == '※'
+                || value.contains("注")
+                || value.contains("お願い")
+                || value.contains("備考")
+                || value.contains("説明")
+                || value.contains("選択ボックス");
+    }
+
+    private static boolean isCircledOneToSeven(char c) {
+        return c >= '①' && c <= '⑦';
+    }
+
+    private static boolean isOneToFour(char c) {
+        return (c >= '1' && c <= '4') || (c >= '１' && c <= '４');
+    }
+
+    static boolean has(int tokens, int flag) {
+        return (tokens & flag) != 0;
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.processor;
 
+import com.example.util.TemplateNames;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
@@ -33,7 +34,7 @@ public class DatabaseExcelExporter {
         String sql = "SELECT rm.HeaderKey " +
                 "FROM ResponseMetadata rm " +
                 "JOIN Responses r ON rm.ResponseID = r.ResponseID " +
-                "WHERE r.TemplateID = ? AND r.SheetName = ? AND rm.HeaderValue IS NOT NULL AND rm.HeaderValue != '' " +
+                "WHERE r.TemplateID = ? AND r.SheetName = ? AND r.IsDeleted = 0 AND rm.HeaderValue IS NOT NULL AND rm.HeaderValue != '' " +
                 "GROUP BY rm.HeaderKey " +
                 "ORDER BY MIN(rm.MetadataID)";
         try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
@@ -50,16 +51,11 @@ public class DatabaseExcelExporter {
 
     public static void exportDatabaseToExcel(Connection conn, OutputStream outputStream, String templateCategory) throws Exception {
 
-        // Step 1: Find all TemplateIDs for the given templateCategory
+        // Step 1: Find the TemplateID shown under templateCategory
         Set<Integer> templateIdsInCategory = new LinkedHashSet<>();
-        String templateIdsSql = "SELECT TemplateID FROM Templates WHERE TemplateCategory = ?";
-        try (PreparedStatement ps = conn.prepareStatement(templateIdsSql)) {
-            ps.setString(1, templateCategory);
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    templateIdsInCategory.add(rs.getInt("TemplateID"));
-                }
-            }
+        int categoryTemplateId = TemplateNames.findTemplateId(conn, templateCategory);
+        if (categoryTemplateId != -1) {
+            templateIdsInCategory.add(categoryTemplateId);
         }
 
         if (templateIdsInCategory.isEmpty()) {
@@ -75,7 +71,7 @@ public class DatabaseExcelExporter {
                 JOIN Responses r ON t.TemplateID = r.TemplateID
                 LEFT JOIN ResponseMetadata rm ON r.ResponseID = rm.ResponseID
                 LEFT JOIN EvaluationData e ON r.ResponseID = e.ResponseID
-                WHERE r.TemplateID IN (""" + placeholders + ") " +
+                WHERE r.IsDeleted = 0 AND r.TemplateID IN (""" + placeholders + ") " +
                 "ORDER BY r.IsReuploaded ASC, r.ResponseID ASC, r.SheetName, e.DataID"; // PRIMARY CHANGE HERE
 
         Map<String, Map<String, Map<String, String>>> uniqueResponsesBySheet = new LinkedHashMap<>(); // SheetName -> UniqueKey -> Metadata Map (HeaderKey -> HeaderValue)
@@ -1,29 +1,52 @@
 package com.example.processor;
 
+import com.example.util.TemplateNames;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.*;
-import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.Date;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.processor.SheetGrid.cellText;
+import static com.example.processor.SheetGrid.tokenAt;
 
 public class ExcelProcessor {
 
-    private static final Pattern MAIN_CRITERION_PATTERN = Pattern.compile("^(?:[0-9０-９]+\\.|(?:I{1,3}|IV|V|VI|VII|VIII)\\.)[^①②③④⑤⑥⑦].*");
-    private static final Pattern PRIORITY_PATTERN = Pattern.compile("^(?:[１２３４１-４]|[1-4])\\.[①②③④⑤⑥⑦]|(?:<|＜)(?:[1-4]|[１-４])(?:>|＞)");
-    private static final Pattern PRIORITY_NUMBER_EXTRACTOR = Pattern.compile("^[＜<]?(\\d+)[＞>]?[\\.．①②③④⑤⑥⑦].*");
-    private static final Pattern EVALUATION_PATTERN = Pattern.compile("^\\d+:(?:Not Related|[A-Za-z]+)$");
-    private static final Pattern NOTE_PATTERN = Pattern.compile("^(※.*|.*(?:お願い|注意|注|備考|説明|選択ボックス).*)", Pattern.UNICODE_CASE);
-    private static final String EVAL_TABLE_HEADER = "評価項目";
+    private static final Logger logger = LoggerFactory.getLogger(ExcelProcessor.class);
+
+    // Shared by all uploads; bounds how many sheets are being parsed at once across the server
+    private static final ExecutorService SHEET_PARSER_POOL = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                private final AtomicInteger counter = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "sheet-parser-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
 
     public static class TemplateCreationResult {
         public int templateId;
         public String templateCategoryDisplayName;
         public String internalTemplateCategory;
+        // True when the same file content was already stored and nothing was parsed or written
+        public boolean unchanged;
 
         public TemplateCreationResult(int templateId, String templateCategoryDisplayName, String internalTemplateCategory) {
             this.templateId = templateId;
@@ -32,84 +55,431 @@ public class ExcelProcessor {
         }
     }
 
+    // Result of extracting one sheet, ready to be written in that sheet's transaction
+    static class ParsedSheet {
+        final String sheetName;
+        final List<Map<String, String>> metadataList;
+        final List<Map<String, String>> evalData;
+        // Set when the table layout was detected from scratch and should be stored as the sheet's plan
+        TemplateParsePlans.Plan detectedPlan;
+
+        ParsedSheet(String sheetName, List<Map<String, String>> metadataList, List<Map<String, String>> evalData) {
+            this.sheetName = sheetName;
+            this.metadataList = metadataList;
+            this.evalData = evalData;
+        }
+
+        // Only the first metadata table is stored, one ResponseMetadata row per entry
+        int metadataRowCount() {
+            return metadataList.isEmpty() ? 0 : metadataList.get(0).size();
+        }
+    }
+
+    // Writes held back until the end of a workbook-scoped transaction, see IngestionOptions.workbookTransaction
+    private static class WorkbookBatch {
+        final Map<Integer, Boolean> reuploadedByResponse = new LinkedHashMap<>();
+        final Map<Integer, List<Map<String, String>>> evalDataByResponse = new LinkedHashMap<>();
+        // Reported to the progress listener only once the workbook has been committed
+        final List<ParsedSheet> storedSheets = new ArrayList<>();
+    }
+
     public static TemplateCreationResult processExcelFile(Connection conn, InputStream inputStream, String originalFileName) throws Exception {
-        try (XSSFWorkbook workbook = new XSSFWorkbook(inputStream)) {
-            String internalTemplateCategory = generateInternalTemplateCategory(workbook);
+        return processExcelFile(conn, inputStream, originalFileName, new IngestionOptions());
+    }
 
-            TemplateCreationResult creationResult = getOrCreateTemplate(conn, originalFileName, internalTemplateCategory);
-            int templateId = creationResult.templateId;
+    public static TemplateCreationResult processExcelFile(Connection conn, InputStream inputStream, String originalFileName, IngestionOptions options) throws Exception {
+        if (options.streaming) {
+            return processExcelFileStreaming(conn, inputStream, originalFileName, options);
+        }
 
-            for (Sheet sheet : workbook) {
-                String sheetName = sheet.getSheetName();
-                System.out.println("Processing sheet: " + sheetName);
+        // XSSFWorkbook buffers the whole file anyway; reading it first lets us hash it
+        byte[] content = inputStream.readAllBytes();
+        String contentHash = sha256Hex(new ByteArrayInputStream(content));
 
-                if (sheetName.startsWith("評価結果リスト_") || sheetName.equals("表紙") || sheetName.isEmpty()) {
-                    System.out.println("Skipping summary/cover/empty sheet: " + sheetName);
+        // Template lookup and the unchanged check only need workbook.xml, so they run before the workbook is loaded
+        List<String> fingerprint = WorkbookFingerprint.readSheetNames(new ByteArrayInputStream(content));
+        TemplateCreationResult creationResult = fingerprint != null ? resolveTemplate(conn, originalFileName, contentHash, fingerprint, options) : null;
+        if (creationResult != null && creationResult.unchanged) {
+            return creationResult;
+        }
+
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(content))) {
+            if (creationResult == null) {
+                List<String> sheetNames = new ArrayList<>();
+                for (Sheet sheet : workbook) {
+                    sheetNames.add(sheet.getSheetName());
+                }
+                creationResult = resolveTemplate(conn, originalFileName, contentHash, sheetNames, options);
+                if (creationResult.unchanged) {
+                    return creationResult;
+                }
+            }
+
+            Map<String, TemplateParsePlans.Plan> plans = options.reuseParsePlans ? TemplateParsePlans.load(conn, creationResult.templateId) : null;
+            CellNormalizer normalizer = new CellNormalizer(workbook, options.cachedFormulaValues);
+            List<Callable<ParsedSheet>> sheetTasks = new ArrayList<>();
+            try {
+                for (Sheet sheet : workbook) {
+                    if (!acceptSheet(sheet.getSheetName(), options)) {
+                        continue;
+                    }
+                    if (options.parallelism > 1) {
+                        // Cell access on an XSSFWorkbook is not thread-safe, so all cells are read here
+                        // on one thread and only the extraction runs in parallel
+                        SheetGrid grid = toSheetGrid(sheet, normalizer);
+                        sheetTasks.add(() -> parseSheet(grid, plans));
+                    } else {
+                        // Run one after the other on this thread; only one grid is held at a time
+                        sheetTasks.add(() -> parseSheet(toSheetGrid(sheet, normalizer), plans));
+                    }
+                }
+                parseAndPersistSheets(conn, creationResult.templateId, originalFileName, contentHash, sheetTasks, options);
+            } finally {
+                IngestionMetrics.recordFormulaCells(normalizer.formulaCellsFromCache, normalizer.formulaCellsEvaluated, 0);
+                logger.debug("Formula cells in {}: {} read from cached results, {} evaluated",
+                        originalFileName, normalizer.formulaCellsFromCache, normalizer.formulaCellsEvaluated);
+            }
+            return creationResult;
+        }
+    }
+
+    /**
+     * Same as {@link #processExcelFile(Connection, InputStream, String, IngestionOptions)} for an
+     * upload that is already on disk; in streaming mode the file is read in place.
+     */
+    public static TemplateCreationResult processExcelFile(Connection conn, Path file, String originalFileName, IngestionOptions options) throws Exception {
+        if (options.streaming) {
+            return processSpooledFile(conn, file, originalFileName, options);
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            return processExcelFile(conn, in, originalFileName, options);
+        }
+    }
+
+    // Streaming mode: the upload is spooled to a temp file and each sheet is parsed with the
+    // SAX event model, so only the sheets currently being parsed are held in memory.
+    private static TemplateCreationResult processExcelFileStreaming(Connection conn, InputStream inputStream, String originalFileName, IngestionOptions options) throws Exception {
+        Path spooledFile = Files.createTempFile("upload-", ".xlsx");
+        try {
+            Files.copy(inputStream, spooledFile, StandardCopyOption.REPLACE_EXISTING);
+            return processSpooledFile(conn, spooledFile, originalFileName, options);
+        } finally {
+            Files.deleteIfExists(spooledFile);
+        }
+    }
+
+    private static TemplateCreationResult processSpooledFile(Connection conn, Path file, String originalFileName, IngestionOptions options) throws Exception {
+        String contentHash;
+        try (InputStream in = Files.newInputStream(file)) {
+            contentHash = sha256Hex(in);
+        }
+
+        // Resolved before the reader loads shared strings and styles
+        List<String> fingerprint = WorkbookFingerprint.readSheetNames(file);
+        TemplateCreationResult creationResult = fingerprint != null ? resolveTemplate(conn, originalFileName, contentHash, fingerprint, options) : null;
+        if (creationResult != null && creationResult.unchanged) {
+            return creationResult;
+        }
+
+        try (StreamingWorkbookReader reader = new StreamingWorkbookReader(file.toFile(), options.evaluateUncachedFormulas)) {
+            List<String> sheetNames = reader.getSheetNames();
+            if (creationResult == null) {
+                creationResult = resolveTemplate(conn, originalFileName, contentHash, sheetNames, options);
+                if (creationResult.unchanged) {
+                    return creationResult;
+                }
+            }
+
+            Map<String, TemplateParsePlans.Plan> plans = options.reuseParsePlans ? TemplateParsePlans.load(conn, creationResult.templateId) : null;
+            List<Callable<ParsedSheet>> sheetTasks = new ArrayList<>();
+            for (int i = 0; i < sheetNames.size(); i++) {
+                if (!acceptSheet(sheetNames.get(i), options)) {
                     continue;
                 }
+                int sheetIndex = i;
+                sheetTasks.add(() -> parseSheet(reader.readSheet(sheetIndex), plans));
+            }
+            parseAndPersistSheets(conn, creationResult.templateId, originalFileName, contentHash, sheetTasks, options);
+            return creationResult;
+        }
+    }
+
+    private static boolean acceptSheet(String sheetName, IngestionOptions options) {
+        logger.debug("Processing sheet: {}", sheetName);
+        if (isSkippedSheet(sheetName)) {
+            logger.debug("Skipping summary/cover/empty sheet: {}", sheetName);
+            return false;
+        }
+        if (!isSelectedSheet(sheetName, options)) {
+            logger.debug("Skipping sheet not selected for this upload: {}", sheetName);
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean isSkippedSheet(String sheetName) {
+        return sheetName.startsWith("評価結果リスト_") || sheetName.equals("表紙") || sheetName.isEmpty();
+    }
 
-                int responseIdToUse;
-                boolean isReupload = false; // Flag to track if this is a re-upload of an existing ResponseID
-                int existingResponseId = getExistingResponseIdForFileNameAndSheet(conn, templateId, originalFileName, sheetName);
+    private static boolean isSelectedSheet(String sheetName, IngestionOptions options) {
+        String name = sheetName.trim();
+        if (options.includeSheets != null && !options.includeSheets.contains(name)) {
+            return false;
+        }
+        return options.excludeSheets == null || !options.excludeSheets.contains(name);
+    }
+
+    /**
+     * Runs the sheet parse tasks and persists their results in workbook order on {@code conn}.
+     * With parallelism > 1, up to that many sheets are parsed ahead on the shared parser pool
+     * while earlier sheets are being written, so Responses rows are still inserted in sheet order.
+     * Each sheet is committed on its own unless the options ask for one transaction per workbook.
+     */
+    private static void parseAndPersistSheets(Connection conn, int templateId, String originalFileName, String contentHash,
+                                              List<Callable<ParsedSheet>> sheetTasks, IngestionOptions options) throws Exception {
+        IngestionProgress progress = options.progress != null ? options.progress : new IngestionProgress() { };
+        progress.sheetsFound(sheetTasks.size());
+
+        if (!options.workbookTransaction) {
+            persistSheets(conn, templateId, originalFileName, contentHash, sheetTasks, options, progress, null);
+            return;
+        }
+
+        WorkbookBatch batch = new WorkbookBatch();
+        boolean committed = false;
+        conn.setAutoCommit(false);
+        try {
+            persistSheets(conn, templateId, originalFileName, contentHash, sheetTasks, options, progress, batch);
+            flushWorkbookBatch(conn, contentHash, batch);
+            conn.commit();
+            committed = true;
+            logger.info("Workbook transaction committed for {}: {} sheets", originalFileName, batch.storedSheets.size());
+        } catch (Throwable t) {
+            logger.warn("Workbook transaction rolled back for {}", originalFileName, t);
+            throw t;
+        } finally {
+            // Also reached on an Error such as OutOfMemoryError: setAutoCommit(true) would commit
+            // the sheets written so far, so roll back first
+            try {
+                if (!committed) {
+                    conn.rollback();
+                }
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        for (ParsedSheet parsed : batch.storedSheets) {
+            progress.sheetStored(parsed.sheetName, parsed.metadataRowCount(), parsed.evalData.size());
+        }
+    }
 
-                conn.setAutoCommit(false); // Start transaction for atomicity
+    private static void persistSheets(Connection conn, int templateId, String originalFileName, String contentHash,
+                                      List<Callable<ParsedSheet>> sheetTasks, IngestionOptions options,
+                                      IngestionProgress progress, WorkbookBatch batch) throws Exception {
+        int parallelism = options.parallelism;
+        if (parallelism <= 1 || sheetTasks.size() <= 1) {
+            for (Callable<ParsedSheet> task : sheetTasks) {
+                ParsedSheet parsed = task.call();
+                persistSheet(conn, templateId, originalFileName, contentHash, parsed, options, batch);
+                sheetPersisted(progress, batch, parsed);
+            }
+            return;
+        }
 
+        Deque<Future<ParsedSheet>> inFlight = new ArrayDeque<>();
+        int nextTask = 0;
+        try {
+            while (nextTask < sheetTasks.size() || !inFlight.isEmpty()) {
+                while (nextTask < sheetTasks.size() && inFlight.size() < parallelism) {
+                    inFlight.addLast(SHEET_PARSER_POOL.submit(sheetTasks.get(nextTask++)));
+                }
+                ParsedSheet parsed;
                 try {
-                    if (existingResponseId != -1) {
-                        System.out.println("Existing response found for OriginalFileName '" + originalFileName + "' and SheetName '" + sheetName + "'. ResponseID: " + existingResponseId + ". Deleting old data for update.");
-                        deleteResponseData(conn, existingResponseId);
-                        responseIdToUse = existingResponseId;
-                        isReupload = true; // Mark as re-upload
-                    } else {
-                        System.out.println("No existing response found for OriginalFileName '" + originalFileName + "' and SheetName '" + sheetName + "'. Inserting new Response record.");
-                        responseIdToUse = insertNewResponse(conn, templateId, sheetName, originalFileName);
-                        // isReupload remains false for new inserts
+                    parsed = inFlight.removeFirst().get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
                     }
+                    throw e;
+                }
+                persistSheet(conn, templateId, originalFileName, contentHash, parsed, options, batch);
+                sheetPersisted(progress, batch, parsed);
+            }
+        } finally {
+            // Stop parsing the remaining sheets if one sheet failed
+            for (Future<ParsedSheet> future : inFlight) {
+                future.cancel(true);
+            }
+        }
+    }
 
-                    List<Map<String, String>> metadataList = extractMetadata(sheet);
-                    List<Map<String, String>> evalData = extractEvaluationData(sheet);
+    private static void sheetPersisted(IngestionProgress progress, WorkbookBatch batch, ParsedSheet parsed) {
+        if (batch != null) {
+            batch.storedSheets.add(parsed);
+        } else {
+            progress.sheetStored(parsed.sheetName, parsed.metadataRowCount(), parsed.evalData.size());
+        }
+    }
 
-                    if (!metadataList.isEmpty()) {
-                        storeResponseMetadata(conn, responseIdToUse, metadataList.get(0));
-                    } else {
-                        System.out.println("No metadata found for sheet: " + sheetName + ". Skipping metadata insert for ResponseID " + responseIdToUse + ".");
-                    }
+    // Evaluation rows of all sheets in one bulk insert, then one batched Responses update
+    private static void flushWorkbookBatch(Connection conn, String contentHash, WorkbookBatch batch) throws SQLException {
+        if (!batch.evalDataByResponse.isEmpty()) {
+            BulkRowWriter.insertEvaluationData(conn, batch.evalDataByResponse);
+            logger.debug("Inserted evaluation data for {} responses in one flush", batch.evalDataByResponse.size());
+        }
+        if (batch.reuploadedByResponse.isEmpty()) {
+            return;
+        }
+        String updateResponseSql = "UPDATE Responses SET LastUpdated = NOW(), IsReuploaded = ?, ContentHash = ? WHERE ResponseID = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(updateResponseSql)) {
+            for (Map.Entry<Integer, Boolean> entry : batch.reuploadedByResponse.entrySet()) {
+                pstmt.setBoolean(1, entry.getValue());
+                pstmt.setString(2, contentHash);
+                pstmt.setInt(3, entry.getKey());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+            logger.debug("Updated LastUpdated and IsReuploaded for ResponseIDs: {}", batch.reuploadedByResponse.keySet());
+        }
+    }
 
-                    if (!evalData.isEmpty()) {
-                        storeEvaluationData(conn, responseIdToUse, evalData);
-                        System.out.println("Stored evaluation data for sheet: " + sheetName + " with ResponseID=" + responseIdToUse);
-                    } else {
-                        System.out.println("No evaluation data to store for sheet: " + sheetName + " for ResponseID " + responseIdToUse + ".");
-                    }
+    // plans is null unless IngestionOptions.reuseParsePlans is set
+    static ParsedSheet parseSheet(SheetGrid sheet, Map<String, TemplateParsePlans.Plan> plans) {
+        TemplateParsePlans.Plan plan = plans != null ? plans.get(sheet.getSheetName()) : null;
+        int evalStartRow;
+        int[] columns;
+        boolean detected = false;
+        if (plan != null && plan.matches(sheet)) {
+            logger.debug("Using stored parse plan for sheet {}: {}", sheet.getSheetName(), plan);
+            evalStartRow = plan.evalStartRow;
+            columns = new int[]{plan.evalColumn, plan.commentColumn};
+        } else {
+            if (plan != null) {
+                logger.info("Layout of sheet {} no longer matches its parse plan. Detecting again.", sheet.getSheetName());
+            }
+            evalStartRow = findEvaluationStartRow(sheet);
+            columns = evalStartRow != -1 ? findEvaluationAndCommentColumns(sheet, evalStartRow) : new int[]{-1, -1};
+            detected = true;
+        }
 
-                    // *** MODIFIED: Update LastUpdated timestamp and IsReuploaded flag for the Response ***
-                    String updateResponseSql = "UPDATE Responses SET LastUpdated = NOW(), IsReuploaded = ? WHERE ResponseID = ?";
-                    try (PreparedStatement pstmt = conn.prepareStatement(updateResponseSql)) {
-                        pstmt.setBoolean(1, isReupload);
-                        pstmt.setInt(2, responseIdToUse);
-                        pstmt.executeUpdate();
-                        System.out.println("Updated LastUpdated and IsReuploaded (" + isReupload + ") for ResponseID: " + responseIdToUse);
-                    }
+        ParsedSheet parsed = new ParsedSheet(sheet.getSheetName(), extractMetadata(sheet, evalStartRow),
+                extractEvaluationData(sheet, evalStartRow, columns[0], columns[1]));
+        // Only a layout named entirely by the header row is stored: the same header row then always
+        // yields the same columns. Columns guessed from the answers are detected on every upload.
+        if (plans != null && detected && columns[0] != -1
+                && Arrays.equals(columns, findHeaderColumns(sheet.getRowTokens(evalStartRow - 1)))) {
+            parsed.detectedPlan = TemplateParsePlans.Plan.detected(sheet, evalStartRow, columns[0], columns[1]);
+        }
+        return parsed;
+    }
+
+    private static void persistSheet(Connection conn, int templateId, String originalFileName, String contentHash,
+                                     ParsedSheet sheet, IngestionOptions options, WorkbookBatch batch) throws SQLException {
+        String sheetName = sheet.sheetName;
+
+        int responseIdToUse;
+        boolean isReupload = false; // Flag to track if this is a re-upload of an existing ResponseID
+        int existingResponseId = getExistingResponseIdForFileNameAndSheet(conn, templateId, originalFileName, sheetName);
+
+        // Inside a workbook transaction the caller commits, and the evaluation inserts and
+        // the Responses update are left to flushWorkbookBatch
+        boolean sheetTransaction = batch == null;
+        boolean committed = false;
+        if (sheetTransaction) {
+            conn.setAutoCommit(false); // Start transaction for atomicity
+        }
+
+        try {
+            boolean applyDiff = existingResponseId != -1 && options.diffReuploads;
+            if (applyDiff) {
+                logger.debug("Existing response found for OriginalFileName '{}' and SheetName '{}'. ResponseID: {}. Applying changed rows only.", originalFileName, sheetName, existingResponseId);
+                responseIdToUse = existingResponseId;
+                isReupload = true;
+            } else if (existingResponseId != -1) {
+                logger.debug("Existing response found for OriginalFileName '{}' and SheetName '{}'. ResponseID: {}. Deleting old data for update.", originalFileName, sheetName, existingResponseId);
+                deleteResponseData(conn, existingResponseId);
+                responseIdToUse = existingResponseId;
+                isReupload = true; // Mark as re-upload
+            } else {
+                logger.debug("No existing response found for OriginalFileName '{}' and SheetName '{}'. Inserting new Response record.", originalFileName, sheetName);
+                responseIdToUse = insertNewResponse(conn, templateId, sheetName, originalFileName);
+                // isReupload remains false for new inserts
+            }
+
+            List<Map<String, String>> metadataList = sheet.metadataList;
+            List<Map<String, String>> evalData = sheet.evalData;
+
+            if (applyDiff) {
+                Map<String, String> metadata = metadataList.isEmpty() ? Collections.emptyMap() : metadataList.get(0);
+                ResponseDiffWriter.DiffCounts metadataCounts = ResponseDiffWriter.applyMetadata(conn, responseIdToUse, metadata);
+                ResponseDiffWriter.DiffCounts evalCounts = ResponseDiffWriter.applyEvaluationData(conn, responseIdToUse, evalData);
+                logger.debug("Re-upload diff for ResponseID {}: metadata {}; evaluation data {}", responseIdToUse, metadataCounts, evalCounts);
+            } else {
+                if (!metadataList.isEmpty()) {
+                    storeResponseMetadata(conn, responseIdToUse, metadataList.get(0));
+                } else {
+                    logger.debug("No metadata found for sheet: {}. Skipping metadata insert for ResponseID {}.", sheetName, responseIdToUse);
+                }
+
+                if (!evalData.isEmpty() && batch != null) {
+                    batch.evalDataByResponse.put(responseIdToUse, evalData);
+                    logger.debug("Queued evaluation data for sheet: {} with ResponseID={}", sheetName, responseIdToUse);
+                } else if (!evalData.isEmpty()) {
+                    storeEvaluationData(conn, responseIdToUse, evalData);
+                    logger.debug("Stored evaluation data for sheet: {} with ResponseID={}", sheetName, responseIdToUse);
+                } else {
+                    logger.debug("No evaluation data to store for sheet: {} for ResponseID {}.", sheetName, responseIdToUse);
+                }
+            }
 
-                    conn.commit(); // Commit transaction
-                    System.out.println("Transaction committed for ResponseID: " + responseIdToUse);
+            if (sheet.detectedPlan != null) {
+                TemplateParsePlans.save(conn, templateId, sheetName, sheet.detectedPlan);
+            }
+
+            if (batch != null) {
+                batch.reuploadedByResponse.put(responseIdToUse, isReupload);
+                return;
+            }
 
-                } catch (SQLException e) {
-                    conn.rollback(); // Rollback on error
-                    System.err.println("Transaction rolled back for sheet " + sheetName + ". Error: " + e.getMessage());
-                    throw e; // Re-throw to be caught by outer try-catch
+            // *** MODIFIED: Update LastUpdated timestamp and IsReuploaded flag for the Response ***
+            // ContentHash is written in the same transaction, so it only matches once the sheet is fully stored
+            String updateResponseSql = "UPDATE Responses SET LastUpdated = NOW(), IsReuploaded = ?, ContentHash = ? WHERE ResponseID = ?";
+            try (PreparedStatement pstmt = conn.prepareStatement(updateResponseSql)) {
+                pstmt.setBoolean(1, isReupload);
+                pstmt.setString(2, contentHash);
+                pstmt.setInt(3, responseIdToUse);
+                pstmt.executeUpdate();
+                logger.debug("Updated LastUpdated and IsReuploaded ({}) for ResponseID: {}", isReupload, responseIdToUse);
+            }
+
+            conn.commit(); // Commit transaction
+            committed = true;
+            logger.debug("Transaction committed for ResponseID: {}", responseIdToUse);
+
+        } catch (Throwable t) {
+            if (sheetTransaction) {
+                logger.warn("Transaction rolled back for sheet {}", sheetName, t);
+            }
+            throw t; // Re-throw to be caught by outer try-catch
+        } finally {
+            if (sheetTransaction) {
+                // Rolled back on any throwable, as setAutoCommit(true) would commit the rows written so far
+                try {
+                    if (!committed) {
+                        conn.rollback(); // Rollback on error
+                    }
                 } finally {
                     conn.setAutoCommit(true); // Restore auto-commit
                 }
             }
-            return creationResult;
         }
     }
 
-    private static String generateInternalTemplateCategory(XSSFWorkbook workbook) {
+    private static String generateInternalTemplateCategory(List<String> sheetNames) {
         List<String> relevantSheetNames = new ArrayList<>();
-        for (Sheet sheet : workbook) {
-            String sheetName = sheet.getSheetName().trim();
+        for (String name : sheetNames) {
+            String sheetName = name.trim();
             if (!sheetName.startsWith("評価結果リスト_") && !sheetName.equals("表紙") && !sheetName.isEmpty()) {
                 relevantSheetNames.add(sheetName);
             }
@@ -121,52 +491,138 @@ public class ExcelProcessor {
         return String.join("_", relevantSheetNames);
     }
 
+    // The unchanged-upload check and the template lookup, both keyed on the sheet names alone
+    private static TemplateCreationResult resolveTemplate(Connection conn, String originalFileName, String contentHash,
+                                                          List<String> sheetNames, IngestionOptions options) throws SQLException {
+        List<String> selectedSheets = new ArrayList<>();
+        for (String sheetName : sheetNames) {
+            if (!isSkippedSheet(sheetName) && isSelectedSheet(sheetName, options)) {
+                selectedSheets.add(sheetName);
+            }
+        }
+        boolean filtered = options.includeSheets != null || options.excludeSheets != null;
+        if (filtered && selectedSheets.isEmpty()) {
+            throw new IllegalArgumentException("None of the selected sheets are in " + originalFileName + ". Sheets: " + sheetNames);
+        }
+
+        // The template is still identified by all of the workbook's sheets, whichever are stored
+        String internalTemplateCategory = generateInternalTemplateCategory(sheetNames);
+        TemplateCreationResult unchangedResult = findUnchangedUpload(conn, originalFileName, internalTemplateCategory, contentHash,
+                selectedSheets, filtered);
+        if (unchangedResult != null) {
+            return unchangedResult;
+        }
+        return getOrCreateTemplate(conn, originalFileName, internalTemplateCategory);
+    }
+
+    /**
+     * Returns the stored template if every sheet this upload would store was last stored from
+     * byte-identical content (same SHA-256), or null if the file has to be parsed and written.
+     * Without a sheet selection the file must also have no other stored sheets.
+     */
+    private static TemplateCreationResult findUnchangedUpload(Connection conn, String originalFileName, String internalTemplateCategory,
+                                                              String contentHash, List<String> selectedSheets, boolean filtered) throws SQLException {
+        String sql = """
+            SELECT t.TemplateID, COUNT(*) AS StoredSheets, SUM(r.ContentHash = ?) AS UnchangedSheets
+            FROM Templates t
+            JOIN Responses r ON r.TemplateID = t.TemplateID
+            WHERE t.InternalTemplateCategory = ? AND r.OriginalFileName = ? AND t.IsDeleted = 0 AND r.IsDeleted = 0
+        """;
+        if (filtered) {
+            sql += " AND r.SheetName IN (" + String.join(", ", Collections.nCopies(selectedSheets.size(), "?")) + ")";
+        }
+        sql += " GROUP BY t.TemplateID";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, contentHash);
+            pstmt.setString(2, internalTemplateCategory);
+            pstmt.setString(3, originalFileName);
+            if (filtered) {
+                for (int i = 0; i < selectedSheets.size(); i++) {
+                    pstmt.setString(4 + i, selectedSheets.get(i));
+                }
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    int storedSheets = rs.getInt("StoredSheets");
+                    if (storedSheets == selectedSheets.size() && rs.getInt("UnchangedSheets") == storedSheets) {
+                        logger.info("File '{}' is unchanged since its last upload (SHA-256 {}). Skipping.", originalFileName, contentHash);
+                        int templateId = rs.getInt("TemplateID");
+                        TemplateCreationResult result = new TemplateCreationResult(templateId, TemplateNames.displayName(conn, templateId), internalTemplateCategory);
+                        result.unchanged = true;
+                        return result;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String sha256Hex(InputStream in) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    // Files of one upload are stored concurrently; two of them with a new sheet layout must not
+    // both create a template. Their names cannot clash: each gets its own ordinal (see TemplateNames)
+    private static final Object TEMPLATE_LOCK = new Object();
+
     private static TemplateCreationResult getOrCreateTemplate(Connection conn, String originalFileName, String internalTemplateCategory) throws SQLException {
-        String selectSql = "SELECT TemplateID, TemplateCategory FROM Templates WHERE InternalTemplateCategory = ?";
+        synchronized (TEMPLATE_LOCK) {
+            return findOrInsertTemplate(conn, originalFileName, internalTemplateCategory);
+        }
+    }
+
+    private static TemplateCreationResult findOrInsertTemplate(Connection conn, String originalFileName, String internalTemplateCategory) throws SQLException {
+        String selectSql = "SELECT TemplateID FROM Templates WHERE InternalTemplateCategory = ? AND IsDeleted = 0";
+        int existingTemplateId = -1;
         try (PreparedStatement pstmt = conn.prepareStatement(selectSql)) {
             pstmt.setString(1, internalTemplateCategory);
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
-                    System.out.println("Existing template structure found. ID: " + rs.getInt("TemplateID") + ", Display Name: " + rs.getString("TemplateCategory"));
-                    return new TemplateCreationResult(rs.getInt("TemplateID"), rs.getString("TemplateCategory"), internalTemplateCategory);
+                    existingTemplateId = rs.getInt("TemplateID");
                 }
             }
         }
+        if (existingTemplateId != -1) {
+            String displayName = TemplateNames.displayName(conn, existingTemplateId);
+            logger.debug("Existing template structure found. ID: {}, Display Name: {}", existingTemplateId, displayName);
+            return new TemplateCreationResult(existingTemplateId, displayName, internalTemplateCategory);
+        }
 
-        String newDisplayName = generateUniqueTemplateDisplayName(conn);
-        String insertSql = "INSERT INTO Templates (TemplateName, TemplateCategory, InternalTemplateCategory, UploadDate) VALUES (?, ?, ?, NOW())";
+        // Auto-named templates are shown by the rank of their ordinal; TemplateCategory only holds custom names
+        String insertSql = "INSERT INTO Templates (TemplateName, TemplateCategory, InternalTemplateCategory, UploadDate, IsAutoNamed, DisplayOrdinal) VALUES (?, ?, ?, NOW(), 1, ?)";
         int newTemplateId;
         try (PreparedStatement pstmt = conn.prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS)) {
             pstmt.setString(1, originalFileName);
-            pstmt.setString(2, newDisplayName);
+            pstmt.setString(2, "");
             pstmt.setString(3, internalTemplateCategory);
+            pstmt.setInt(4, TemplateNames.nextDisplayOrdinal(conn));
             pstmt.executeUpdate();
             try (ResultSet rs = pstmt.getGeneratedKeys()) {
                 if (rs.next()) {
                     newTemplateId = rs.getInt(1);
-                    System.out.println("New template created. ID: " + newTemplateId + ", Display Name: " + newDisplayName + ", Internal Category: " + internalTemplateCategory);
                 } else {
                     throw new SQLException("Failed to retrieve generated TemplateID.");
                 }
             }
         }
+        String newDisplayName = TemplateNames.displayName(conn, newTemplateId);
+        logger.info("New template created. ID: {}, Display Name: {}, Internal Category: {}", newTemplateId, newDisplayName, internalTemplateCategory);
         return new TemplateCreationResult(newTemplateId, newDisplayName, internalTemplateCategory);
     }
 
-    private static String generateUniqueTemplateDisplayName(Connection conn) throws SQLException {
-        int maxNum = 0;
-        String getMaxNumSql = "SELECT MAX(CAST(SUBSTRING_INDEX(TemplateCategory, 'Template Type ', -1) AS UNSIGNED)) AS MaxNum FROM Templates WHERE TemplateCategory LIKE 'Template Type %'";
-        try (PreparedStatement pstmt = conn.prepareStatement(getMaxNumSql);
-             ResultSet rs = pstmt.executeQuery()) {
-            if (rs.next()) {
-                maxNum = rs.getInt("MaxNum");
-            }
-        }
-        return "Template Type " + (maxNum + 1);
-    }
-
     private static int getExistingResponseIdForFileNameAndSheet(Connection conn, int templateId, String originalFileName, String sheetName) throws SQLException {
-        String sql = "SELECT ResponseID FROM Responses WHERE TemplateID = ? AND OriginalFileName = ? AND SheetName = ?";
+        String sql = "SELECT ResponseID FROM Responses WHERE TemplateID = ? AND OriginalFileName = ? AND SheetName = ? AND IsDeleted = 0";
         try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, templateId);
             pstmt.setString(2, originalFileName);
@@ -211,97 +667,72 @@ public class ExcelProcessor {
             pstmt.setInt(1, responseId);
             pstmt.executeUpdate();
         }
-        System.out.println("Successfully deleted existing metadata and evaluation data for ResponseID: " + responseId);
+        logger.debug("Deleted existing metadata and evaluation data for ResponseID: {}", responseId);
     }
 
     private static void storeResponseMetadata(Connection conn, int responseId, Map<String, String> metadata) throws SQLException {
-        String insertMetadataSql = "INSERT INTO ResponseMetadata (ResponseID, HeaderKey, HeaderValue) VALUES (?, ?, ?)";
-        try (PreparedStatement pstmt = conn.prepareStatement(insertMetadataSql)) {
-            for (Map.Entry<String, String> entry : metadata.entrySet()) {
-                pstmt.setInt(1, responseId);
-                pstmt.setString(2, entry.getKey());
-                pstmt.setString(3, entry.getValue());
-                pstmt.addBatch();
-            }
-            pstmt.executeBatch();
-            System.out.println("Stored new metadata for ResponseID=" + responseId + ": " + metadata);
-        }
+        BulkRowWriter.insertMetadata(conn, responseId, metadata);
+        logger.debug("Stored new metadata for ResponseID={}: {}", responseId, metadata);
     }
 
     private static void storeEvaluationData(Connection conn, int responseId, List<Map<String, String>> evalData) throws SQLException {
-        String insertSql = "INSERT INTO EvaluationData (ResponseID, MainItem, SubItem, Evaluation, Comment) VALUES (?, ?, ?, ?, ?)";
-
-        try (PreparedStatement pstmtInsert = conn.prepareStatement(insertSql)) {
-            for (Map<String, String> entry : evalData) {
-                String mainItem = entry.get("MainItem");
-                String subItem = entry.get("SubItem");
-                String evaluation = entry.get("Evaluation");
-                String comment = entry.get("Comment");
-
-                pstmtInsert.setInt(1, responseId);
-                pstmtInsert.setString(2, mainItem);
-                pstmtInsert.setString(3, subItem);
-                pstmtInsert.setString(4, evaluation);
-                pstmtInsert.setString(5, comment);
-                pstmtInsert.addBatch();
-            }
-            pstmtInsert.executeBatch();
-            System.out.println("Inserted evaluation data batch for ResponseID=" + responseId + ". Total items: " + evalData.size());
-        }
+        BulkRowWriter.insertEvaluationData(conn, responseId, evalData);
+        logger.debug("Inserted evaluation data batch for ResponseID={}. Total items: {}", responseId, evalData.size());
     }
 
-    private static List<Map<String, String>> extractMetadata(Sheet sheet) {
+    private static List<Map<String, String>> extractMetadata(SheetGrid sheet, int evalStartRow) {
         List<Map<String, String>> metadataList = new ArrayList<>();
-        int evalStartRow = findEvaluationStartRow(sheet);
         int maxRowsToSearch = (evalStartRow == -1) ? sheet.getLastRowNum() + 1 : evalStartRow - 1;
 
-        System.out.println("Scanning for metadata in sheet: " + sheet.getSheetName() + " up to row: " + maxRowsToSearch);
+        logger.debug("Scanning for metadata in sheet: {} up to row: {}", sheet.getSheetName(), maxRowsToSearch);
         Map<String, String> metadata = new LinkedHashMap<>();
         readMetadataTable(sheet, 0, metadata, maxRowsToSearch);
 
         if (!metadata.isEmpty()) {
             metadataList.add(metadata);
-            System.out.println("Metadata found: " + metadata);
+            logger.debug("Metadata found: {}", metadata);
         } else {
-            System.out.println("No metadata found in sheet: " + sheet.getSheetName());
+            logger.debug("No metadata found in sheet: {}", sheet.getSheetName());
         }
 
         return metadataList;
     }
 
-    private static void readMetadataTable(Sheet sheet, int startRow, Map<String, String> metadata, int maxRows) {
+    private static void readMetadataTable(SheetGrid sheet, int startRow, Map<String, String> metadata, int maxRows) {
         for (int i = startRow; i < maxRows; i++) {
-            Row row = sheet.getRow(i);
+            String[] row = sheet.getRow(i);
             if (row == null) continue;
+            short[] tokens = sheet.getRowTokens(i);
 
             boolean isHeaderRow = false;
-            for (Cell cell : row) {
-                if ("評価項目".equals(getCellValue(cell))) {
+            for (short token : tokens) {
+                if (CellTokens.has(token, CellTokens.EVAL_TABLE_HEADER)) {
                     isHeaderRow = true;
                     break;
                 }
             }
             if (isHeaderRow) {
-                System.out.println("Skipping header row at: " + i);
+                logger.trace("Skipping header row at: {}", i);
                 continue;
             }
 
-            int maxCols = row.getLastCellNum();
+            int maxCols = row.length;
             int j = 0;
             while (j < maxCols) {
-                while (j < maxCols && getCellValue(row.getCell(j)).isEmpty()) j++;
+                while (j < maxCols && CellTokens.has(tokenAt(tokens, j), CellTokens.EMPTY)) j++;
                 if (j >= maxCols) break;
-                String header = getCellValue(row.getCell(j));
-                if (isNote(header)) {
+                String header = cellText(row, j);
+                if (CellTokens.has(tokenAt(tokens, j), CellTokens.NOTE)) {
                     j++;
                     continue;
                 }
                 int m = j + 1;
-                while (m < maxCols && getCellValue(row.getCell(m)).isEmpty()) m++;
-                String value = (m < maxCols) ? getCellValue(row.getCell(m)) : "";
-                if (!value.isEmpty() && !isNote(value)) {
+                while (m < maxCols && CellTokens.has(tokenAt(tokens, m), CellTokens.EMPTY)) m++;
+                String value = (m < maxCols) ? cellText(row, m) : "";
+                int valueTokens = (m < maxCols) ? tokenAt(tokens, m) : CellTokens.EMPTY;
+                if (!CellTokens.has(valueTokens, CellTokens.EMPTY | CellTokens.NOTE)) {
                     metadata.put(header, value);
-                    System.out.println("Stored: " + header + " = " + value + " at row " + i + ", header col " + j + ", value col " + m);
+                    logger.trace("Stored: {} = {} at row {}, header col {}, value col {}", header, value, i, j, m);
                     j = m + 1;
                 } else {
                     j++;
@@ -310,31 +741,18 @@ public class ExcelProcessor {
         }
     }
 
-    private static boolean isNote(String value) {
-        if (value == null || value.isEmpty()) return false;
-        return NOTE_PATTERN.matcher(value).matches();
-    }
-
-    private static int[] findEvaluationAndCommentColumns(Sheet sheet, int evalStartRow) {
-        Row headerRow = sheet.getRow(evalStartRow - 1);
+    private static int[] findEvaluationAndCommentColumns(SheetGrid sheet, int evalStartRow) {
+        String[] headerRow = sheet.getRow(evalStartRow - 1);
+        short[] headerTokens = sheet.getRowTokens(evalStartRow - 1);
         if (headerRow == null) {
-            System.out.println("Header row " + (evalStartRow - 1) + " is null in sheet: " + sheet.getSheetName());
+            logger.debug("Header row {} is null in sheet: {}", evalStartRow - 1, sheet.getSheetName());
             return new int[]{-1, -1};
         }
 
-        int evalColumn = -1;
-        int commentColumn = -1;
-        int maxColumnsToCheck = headerRow.getLastCellNum() > 0 ? headerRow.getLastCellNum() : 52;
-
-        for (int j = 0; j < maxColumnsToCheck; j++) {
-            Cell cell = headerRow.getCell(j, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK);
-            String value = getCellValue(cell).trim();
-            if ("評価".equals(value) && evalColumn == -1) {
-                evalColumn = j;
-            } else if ("コメント".equals(value) && commentColumn == -1) {
-                commentColumn = j;
-            }
-        }
+        int[] headerColumns = findHeaderColumns(headerTokens);
+        int evalColumn = headerColumns[0];
+        int commentColumn = headerColumns[1];
+        int maxColumnsToCheck = headerRow.length > 0 ? headerRow.length : 52;
 
         if (evalColumn == -1) {
             evalColumn = findDataPatternColumn(sheet, evalStartRow, "evaluation");
@@ -353,25 +771,40 @@ public class ExcelProcessor {
         }
 
         if (evalColumn == -1) {
-            System.out.println("Could not dynamically detect eval column in sheet: " + sheet.getSheetName());
+            logger.debug("Could not dynamically detect eval column in sheet: {}", sheet.getSheetName());
             return new int[]{-1, -1};
         }
         if (commentColumn == -1) {
             commentColumn = evalColumn + 1;
-            System.out.println("Comment column not found, defaulting to evalColumn + 1: " + commentColumn);
+            logger.debug("Comment column not found, defaulting to evalColumn + 1: {}", commentColumn);
         }
 
-        System.out.println("Detected columns in sheet " + sheet.getSheetName() + ": evalColumn=" + evalColumn + ", commentColumn=" + commentColumn);
+        logger.debug("Detected columns in sheet {}: evalColumn={}, commentColumn={}", sheet.getSheetName(), evalColumn, commentColumn);
+        return new int[]{evalColumn, commentColumn};
+    }
+
+    // Evaluation and comment columns named by the header row itself, -1 where there is no label
+    private static int[] findHeaderColumns(short[] headerTokens) {
+        int evalColumn = -1;
+        int commentColumn = -1;
+        for (int j = 0; j < headerTokens.length; j++) {
+            int token = headerTokens[j];
+            if (CellTokens.has(token, CellTokens.EVAL_COLUMN_HEADER) && evalColumn == -1) {
+                evalColumn = j;
+            } else if (CellTokens.has(token, CellTokens.COMMENT_COLUMN_HEADER) && commentColumn == -1) {
+                commentColumn = j;
+            }
+        }
         return new int[]{evalColumn, commentColumn};
     }
 
-    private static boolean hasCommentData(Sheet sheet, int startRow, int column) {
+    private static boolean hasCommentData(SheetGrid sheet, int startRow, int column) {
         for (int i = startRow; i < startRow + 10 && i <= sheet.getLastRowNum(); i++) {
-            Row row = sheet.getRow(i);
+            String[] row = sheet.getRow(i);
             if (row != null) {
-                String value = getCellValue(row.getCell(column, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK));
-                if (!value.isEmpty() && !EVALUATION_PATTERN.matcher(value).matches() && !value.matches("^[＜＞]")) {
-                    System.out.println("Comment data found at col " + column + ", row " + i + ": " + value);
+                String value = cellText(row, column);
+                if (!CellTokens.has(tokenAt(sheet.getRowTokens(i), column), CellTokens.EMPTY | CellTokens.EVALUATION | CellTokens.ANGLE_MARK)) {
+                    logger.trace("Comment data found at col {}, row {}: {}", column, i, value);
                     return true;
                 }
             }
@@ -379,17 +812,19 @@ public class ExcelProcessor {
         return false;
     }
 
-    private static int findDataPatternColumn(Sheet sheet, int startRow, String type) {
+    private static int findDataPatternColumn(SheetGrid sheet, int startRow, String type) {
         for (int i = startRow; i < startRow + 10 && i <= sheet.getLastRowNum(); i++) {
-            Row row = sheet.getRow(i);
+            String[] row = sheet.getRow(i);
             if (row != null) {
-                for (int j = 0; j < row.getLastCellNum(); j++) {
-                    String value = getCellValue(row.getCell(j, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK));
-                    if ("evaluation".equals(type) && EVALUATION_PATTERN.matcher(value).matches()) {
-                        System.out.println(type + " data found at col " + j + ", row " + i + ": " + value);
+                short[] tokens = sheet.getRowTokens(i);
+                for (int j = 0; j < row.length; j++) {
+                    String value = cellText(row, j);
+                    int token = tokenAt(tokens, j);
+                    if ("evaluation".equals(type) && CellTokens.has(token, CellTokens.EVALUATION)) {
+                        logger.trace("{} data found at col {}, row {}: {}", type, j, i, value);
                         return j;
-                    } else if ("comment".equals(type) && !value.isEmpty() && !EVALUATION_PATTERN.matcher(value).matches() && !value.matches("^[＜＞]")) {
-                        System.out.println(type + " data found at col " + j + ", row " + i + ": " + value);
+                    } else if ("comment".equals(type) && !CellTokens.has(token, CellTokens.EMPTY | CellTokens.EVALUATION | CellTokens.ANGLE_MARK)) {
+                        logger.trace("{} data found at col {}, row {}: {}", type, j, i, value);
                         return j;
                     }
                 }
@@ -398,368 +833,261 @@ public class ExcelProcessor {
         return -1;
     }
 
-    private static List<Map<String, String>> extractEvaluationData(Sheet sheet) {
+    // Where extractEvaluationData is inside the evaluation table; rows are visited once, top to bottom
+    private enum EvaluationSection {
+        NONE,             // before the first main item
+        SUB_ITEMS,        // ordinary main item: each row is a sub-item
+        PRIORITY_START,   // "より満足いただくために": waiting for the section's first row
+        PRIORITY_HEADERS, // looking for the <1>, <2>, ... header row
+        PRIORITY_DATA,    // the row right after the header row holds the answers
+        PRIORITY_DONE,    // answers read; ignore rows up to the next main item
+        REQUESTS          // "ご要望等": every non-empty row is a request
+    }
+
+    private static List<Map<String, String>> extractEvaluationData(SheetGrid sheet, int evalStartRow, int evalColumn, int commentColumn) {
         List<Map<String, String>> data = new ArrayList<>();
-        int evalStartRow = findEvaluationStartRow(sheet);
         if (evalStartRow == -1) {
-            System.out.println("Evaluation data not found in sheet: " + sheet.getSheetName());
+            logger.debug("Evaluation data not found in sheet: {}", sheet.getSheetName());
             return data;
         }
-
-        int[] columns = findEvaluationAndCommentColumns(sheet, evalStartRow);
-        int evalColumn = columns[0];
-        int commentColumn = columns[1];
         if (evalColumn == -1) {
             return data;
         }
 
         String currentMainItem = null;
-        Map<String, Map<String, String>> mainSubItemMap = new HashMap<>();
+        EvaluationSection section = EvaluationSection.NONE;
+        String[] priorityHeadersRow = null;
+        short[] priorityHeaderTokens = null;
 
-        for (int i = evalStartRow; i <= sheet.getLastRowNum(); i++) {
-            Row row = sheet.getRow(i);
+        for (int i = evalStartRow; i <= sheet.getLastRowNum() + 1; i++) {
+            String[] row = sheet.getRow(i);
+            short[] tokens = sheet.getRowTokens(i);
+
+            if (section == EvaluationSection.PRIORITY_DATA) {
+                if (row == null) {
+                    logger.debug("No data row found for priority items below headers. Skipping section.");
+                } else {
+                    extractPriorityItems(currentMainItem, priorityHeadersRow, priorityHeaderTokens, row, tokens, data);
+                }
+                section = EvaluationSection.PRIORITY_DONE;
+            }
             if (row == null) {
-                System.out.println("Skipping null row " + i);
+                if (i > sheet.getLastRowNum()) break;
                 continue;
             }
 
-            String mainItem = getMainItemText(row);
+            String mainItem = getMainItemText(row, tokens);
             if (!mainItem.isEmpty()) {
+                if (section == EvaluationSection.PRIORITY_HEADERS) {
+                    logger.debug("Priority headers row not found for {}. Skipping section.", currentMainItem);
+                }
                 currentMainItem = mainItem;
-                System.out.println("Main item detected at row " + i + ": " + currentMainItem);
-                for (int j = i + 1; j <= sheet.getLastRowNum(); j++) {
-                    Row subRow = sheet.getRow(j);
-                    if (subRow == null) break;
-                    String subNumber = "";
-                    String subItemText = "";
-                    for (int k = 0; k < subRow.getLastCellNum(); k++) {
-                        String cellValue = getCellValue(subRow.getCell(k));
-                        if (cellValue.matches("^[①②③④⑤⑥⑦１-７1-7]") && subNumber.isEmpty()) {
-                            subNumber = cellValue;
-                        } else if (!cellValue.isEmpty() && !cellValue.matches("^[＜＞]") && !EVALUATION_PATTERN.matcher(cellValue).matches()) {
-                            subItemText = cellValue;
-                            break;
-                        }
-                    }
-                    if (!subNumber.isEmpty() && !subItemText.isEmpty()) {
-                        mainSubItemMap.computeIfAbsent(currentMainItem, k -> new HashMap<>()).put(subNumber, subItemText);
-                    }
-                    if (!getMainItemText(subRow).isEmpty()) break;
+                logger.trace("Main item detected at row {}: {}", i, currentMainItem);
+                if (currentMainItem.contains("より満足いただくために")) {
+                    section = EvaluationSection.PRIORITY_START;
+                } else if (currentMainItem.contains("ご要望等")) {
+                    section = EvaluationSection.REQUESTS;
+                } else {
+                    section = EvaluationSection.SUB_ITEMS;
                 }
                 continue;
             }
 
-            if (currentMainItem != null) {
-                if (currentMainItem.contains("より満足いただくために")) {
-                    System.out.println("Priority items section started at row " + i + ": " + currentMainItem);
-                    int nextMainItemRow = findNextMainItemRow(sheet, i);
-
-                    int priorityHeadersRowIdx = -1;
-                    for (int rowNum = i + 1; rowNum < nextMainItemRow && rowNum <= sheet.getLastRowNum(); rowNum++) {
-                        Row potentialHeaderRow = sheet.getRow(rowNum);
-                        if (potentialHeaderRow == null) continue;
-
-                        boolean foundAnyPriorityHeader = false;
-                        for (int col = 0; col < potentialHeaderRow.getLastCellNum(); col++) {
-                            String cellValue = getCellValue(potentialHeaderRow.getCell(col));
-                            if (PRIORITY_PATTERN.matcher(cellValue).matches()) {
-                                foundAnyPriorityHeader = true;
-                                break;
-                            }
-                        }
-                        if (foundAnyPriorityHeader) {
-                            priorityHeadersRowIdx = rowNum;
+            switch (section) {
+                case PRIORITY_START:
+                    // The section's first row is never the header row
+                    logger.trace("Priority items section started at row {}: {}", i, currentMainItem);
+                    section = EvaluationSection.PRIORITY_HEADERS;
+                    break;
+                case PRIORITY_HEADERS:
+                    for (short token : tokens) {
+                        if (CellTokens.has(token, CellTokens.PRIORITY_HEADER)) {
+                            priorityHeadersRow = row;
+                            priorityHeaderTokens = tokens;
+                            section = EvaluationSection.PRIORITY_DATA;
                             break;
                         }
                     }
+                    break;
+                case REQUESTS:
+                    extractRequestRow(currentMainItem, i, row, tokens, data);
+                    break;
+                case SUB_ITEMS:
+                    extractSubItemRow(currentMainItem, i, row, tokens, evalColumn, commentColumn, data);
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (section == EvaluationSection.PRIORITY_HEADERS) {
+            logger.debug("Priority headers row not found for {}. Skipping section.", currentMainItem);
+        }
+        return data;
+    }
 
-                    if (priorityHeadersRowIdx == -1) {
-                        System.out.println("Priority headers row not found for " + currentMainItem + ". Skipping section.");
-                        i = nextMainItemRow - 1;
-                        continue;
-                    }
-
-                    Row priorityHeadersRow = sheet.getRow(priorityHeadersRowIdx);
-                    Row dataRowForPriorities = sheet.getRow(priorityHeadersRowIdx + 1);
-
-                    if (dataRowForPriorities == null) {
-                        System.out.println("No data row found for priority items below headers. Skipping section.");
-                        i = nextMainItemRow - 1;
-                        continue;
-                    }
-
-                    Map<String, Integer> priorityHeaderCols = new LinkedHashMap<>();
-                    for (int col = 0; col < priorityHeadersRow.getLastCellNum(); col++) {
-                        String headerText = getCellValue(priorityHeadersRow.getCell(col));
-                        if (PRIORITY_PATTERN.matcher(headerText).matches()) {
-                            priorityHeaderCols.put(headerText, col);
-                        }
-                    }
-
-                    if (priorityHeaderCols.isEmpty()) {
-                        System.out.println("No priority sub-headers (<1>, <2> etc.) found for " + currentMainItem + ". Skipping section.");
-                        i = nextMainItemRow - 1;
-                        continue;
-                    }
+    private static void extractPriorityItems(String mainItem, String[] priorityHeadersRow, short[] priorityHeaderTokens,
+                                             String[] dataRowForPriorities, short[] priorityDataTokens, List<Map<String, String>> data) {
+        Map<String, Integer> priorityHeaderCols = new LinkedHashMap<>();
+        for (int col = 0; col < priorityHeadersRow.length; col++) {
+            String headerText = cellText(priorityHeadersRow, col);
+            if (CellTokens.has(tokenAt(priorityHeaderTokens, col), CellTokens.PRIORITY_HEADER)) {
+                priorityHeaderCols.put(headerText, col);
+            }
+        }
 
-                    List<String> orderedPriorityHeaders = new ArrayList<>(priorityHeaderCols.keySet());
+        List<String> orderedPriorityHeaders = new ArrayList<>(priorityHeaderCols.keySet());
 
-                    for (int headerBlockIdx = 0; headerBlockIdx < orderedPriorityHeaders.size(); headerBlockIdx++) {
-                        String priorityHeader = orderedPriorityHeaders.get(headerBlockIdx);
-                        int currentBlockStartCol = priorityHeaderCols.get(priorityHeader);
+        for (int headerBlockIdx = 0; headerBlockIdx < orderedPriorityHeaders.size(); headerBlockIdx++) {
+            String priorityHeader = orderedPriorityHeaders.get(headerBlockIdx);
+            int currentBlockStartCol = priorityHeaderCols.get(priorityHeader);
 
-                        String evaluationToStore = "";
-                        String description = "";
+            String evaluationToStore = "";
+            String description = "";
 
-                        String potentialEvaluation = getCellValue(dataRowForPriorities.getCell(currentBlockStartCol, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK));
-                        if (!potentialEvaluation.isEmpty()) {
-                            evaluationToStore = potentialEvaluation;
-                        }
+            String potentialEvaluation = cellText(dataRowForPriorities, currentBlockStartCol);
+            if (!potentialEvaluation.isEmpty()) {
+                evaluationToStore = potentialEvaluation;
+            }
 
-                        int nextBlockStartCol = dataRowForPriorities.getLastCellNum() + 1;
-                        if (headerBlockIdx + 1 < orderedPriorityHeaders.size()) {
-                            nextBlockStartCol = priorityHeaderCols.get(orderedPriorityHeaders.get(headerBlockIdx + 1));
-                        }
+            int nextBlockStartCol = dataRowForPriorities.length + 1;
+            if (headerBlockIdx + 1 < orderedPriorityHeaders.size()) {
+                nextBlockStartCol = priorityHeaderCols.get(orderedPriorityHeaders.get(headerBlockIdx + 1));
+            }
 
-                        StringBuilder descriptionBuilder = new StringBuilder();
-                        int descStartCol = currentBlockStartCol + 1;
-
-                        for (int m = descStartCol; m < dataRowForPriorities.getLastCellNum(); m++) {
-                            if (m >= nextBlockStartCol) {
-                                break;
-                            }
-                            String cellValue = getCellValue(dataRowForPriorities.getCell(m, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK));
-                            if (!cellValue.isEmpty() && !isNote(cellValue) && !EVALUATION_PATTERN.matcher(cellValue).matches()) {
-                                if (descriptionBuilder.length() > 0) {
-                                    descriptionBuilder.append(" ");
-                                }
-                                descriptionBuilder.append(cellValue);
-                            }
-                        }
-                        description = descriptionBuilder.toString().trim();
-
-                        if (!evaluationToStore.isEmpty() || !description.isEmpty()) {
-                            Map<String, String> entry = new HashMap<>();
-
-                            entry.put("MainItem", currentMainItem);
-                            entry.put("SubItem", description);
-                            entry.put("Evaluation", evaluationToStore);
-                            entry.put("Comment", description);
-                            data.add(entry);
-                            System.out.println("Priority item extracted: Header='" + priorityHeader + "', Eval='" + evaluationToStore + "', Desc='" + description + "'");
-                        } else {
-                            System.out.println("Skipping empty priority item block for header: " + priorityHeader);
-                        }
-                    }
-                    i = nextMainItemRow - 1;
-                    continue;
-                }
+            StringBuilder descriptionBuilder = new StringBuilder();
+            int descStartCol = currentBlockStartCol + 1;
 
-                if (currentMainItem.contains("ご要望等")) {
-                    System.out.println("Requests section started at row " + i + ": " + currentMainItem);
-                    int nextMainItemRow = findNextMainItemRow(sheet, i);
-                    for (int j = i; j <= sheet.getLastRowNum() && j < nextMainItemRow; j++) {
-                        Row requestRow = sheet.getRow(j);
-                        if (requestRow == null) {
-                            System.out.println("Skipping null request row " + j);
-                            continue;
-                        }
-                        StringBuilder requestTextBuilder = new StringBuilder();
-                        boolean hasContent = false;
-                        System.out.println("Inspecting request row " + j + " for content:");
-                        for (int k = 0; k < requestRow.getLastCellNum(); k++) {
-                            String cellValue = getCellValue(requestRow.getCell(k));
-                            System.out.println("  Cell at col " + k + ": '" + cellValue + "'");
-                            if (!cellValue.isEmpty() && !EVALUATION_PATTERN.matcher(cellValue).matches()) {
-                                if (requestTextBuilder.length() > 0) {
-                                    requestTextBuilder.append(" | ");
-                                }
-                                requestTextBuilder.append(cellValue);
-                                hasContent = true;
-                            }
-                        }
-                        if (hasContent) {
-                            Map<String, String> entry = new HashMap<>();
-                            entry.put("MainItem", currentMainItem);
-                            entry.put("SubItem", "");
-                            entry.put("Evaluation", "");
-                            entry.put("Comment", requestTextBuilder.toString());
-                            data.add(entry);
-                            System.out.println("Request at row " + j + ": " + requestTextBuilder.toString());
-                        } else {
-                            System.out.println("No valid content found in request row " + j);
-                        }
-                    }
-                    i = nextMainItemRow - 1;
-                    continue;
+            for (int m = descStartCol; m < dataRowForPriorities.length; m++) {
+                if (m >= nextBlockStartCol) {
+                    break;
                 }
-
-                String subItem = "";
-                String evaluation = "";
-                String comment = "";
-                for (int j = 0; j < row.getLastCellNum(); j++) {
-                    String value = getCellValue(row.getCell(j));
-                    if (value.matches("^[①②③④⑤⑥⑦１-７1-7]") && subItem.isEmpty()) {
-                        subItem = value;
-                    } else if (j == evalColumn && EVALUATION_PATTERN.matcher(value).matches()) {
-                        evaluation = value;
-                        System.out.println("Evaluation found at row " + i + ", col " + j + ": " + evaluation);
-                    } else if (j == commentColumn && !EVALUATION_PATTERN.matcher(value).matches() && !value.isEmpty()) {
-                        comment = value;
-                    } else if (j > evalColumn && j != commentColumn && !EVALUATION_PATTERN.matcher(value).matches() && !value.isEmpty()) {
-                        comment = comment.isEmpty() ? value : comment + " " + value;
+                String cellValue = cellText(dataRowForPriorities, m);
+                if (!CellTokens.has(tokenAt(priorityDataTokens, m), CellTokens.EMPTY | CellTokens.NOTE | CellTokens.EVALUATION)) {
+                    if (descriptionBuilder.length() > 0) {
+                        descriptionBuilder.append(" ");
                     }
+                    descriptionBuilder.append(cellValue);
                 }
+            }
+            description = descriptionBuilder.toString().trim();
+
+            if (!evaluationToStore.isEmpty() || !description.isEmpty()) {
+                Map<String, String> entry = new HashMap<>();
+
+                entry.put("MainItem", mainItem);
+                entry.put("SubItem", description);
+                entry.put("Evaluation", evaluationToStore);
+                entry.put("Comment", description);
+                data.add(entry);
+                logger.trace("Priority item extracted: Header='{}', Eval='{}', Desc='{}'", priorityHeader, evaluationToStore, description);
+            } else {
+                logger.trace("Skipping empty priority item block for header: {}", priorityHeader);
+            }
+        }
+    }
 
-                if (!subItem.isEmpty() || !evaluation.isEmpty() || !comment.isEmpty()) {
-                    String effectiveSubItemText = "";
-                    for (int j = 0; j < row.getLastCellNum(); j++) {
-                        String value = getCellValue(row.getCell(j));
-                        if (!value.isEmpty() && !value.matches("^[＜＞]") && !EVALUATION_PATTERN.matcher(value).matches() && !value.matches("^[①②③④⑤⑥⑦１-７1-7]")) {
-                            effectiveSubItemText = value;
-                            break;
-                        }
-                    }
-                    if (!effectiveSubItemText.isEmpty() || !subItem.isEmpty()) {
-                        Map<String, String> entry = new HashMap<>();
-                        entry.put("MainItem", currentMainItem);
-                        entry.put("SubItem", subItem.isEmpty() ? effectiveSubItemText : subItem + " " + effectiveSubItemText);
-                        entry.put("Evaluation", evaluation);
-                        entry.put("Comment", comment.trim());
-                        data.add(entry);
-                        System.out.println("Evaluation item at row " + i + ": Main=" + currentMainItem +
-                                ", Sub=" + entry.get("SubItem") + ", Eval=" + evaluation +
-                                ", Comment=" + comment.trim());
-                    }
+    private static void extractRequestRow(String mainItem, int rowNum, String[] requestRow, short[] requestTokens, List<Map<String, String>> data) {
+        StringBuilder requestTextBuilder = new StringBuilder();
+        boolean hasContent = false;
+        for (int k = 0; k < requestRow.length; k++) {
+            if (!CellTokens.has(tokenAt(requestTokens, k), CellTokens.EMPTY | CellTokens.EVALUATION)) {
+                if (requestTextBuilder.length() > 0) {
+                    requestTextBuilder.append(" | ");
                 }
+                requestTextBuilder.append(cellText(requestRow, k));
+                hasContent = true;
             }
         }
-        return data;
+        if (hasContent) {
+            Map<String, String> entry = new HashMap<>();
+            entry.put("MainItem", mainItem);
+            entry.put("SubItem", "");
+            entry.put("Evaluation", "");
+            entry.put("Comment", requestTextBuilder.toString());
+            data.add(entry);
+            logger.trace("Request at row {}: {}", rowNum, entry.get("Comment"));
+        } else {
+            logger.trace("No valid content found in request row {}", rowNum);
+        }
     }
 
-    private static String getMainItemText(Row row) {
-        for (int j = 0; j < row.getLastCellNum(); j++) {
-            String value = getCellValue(row.getCell(j));
-            if (MAIN_CRITERION_PATTERN.matcher(value).find()) {
-                return value;
+    private static void extractSubItemRow(String mainItem, int rowNum, String[] row, short[] tokens,
+                                          int evalColumn, int commentColumn, List<Map<String, String>> data) {
+        String subItem = "";
+        String evaluation = "";
+        String comment = "";
+        for (int j = 0; j < row.length; j++) {
+            String value = cellText(row, j);
+            int token = tokenAt(tokens, j);
+            if (CellTokens.has(token, CellTokens.SUB_NUMBER) && subItem.isEmpty()) {
+                subItem = value;
+            } else if (j == evalColumn && CellTokens.has(token, CellTokens.EVALUATION)) {
+                evaluation = value;
+                logger.trace("Evaluation found at row {}, col {}: {}", rowNum, j, evaluation);
+            } else if (j == commentColumn && !CellTokens.has(token, CellTokens.EVALUATION | CellTokens.EMPTY)) {
+                comment = value;
+            } else if (j > evalColumn && j != commentColumn && !CellTokens.has(token, CellTokens.EVALUATION | CellTokens.EMPTY)) {
+                comment = comment.isEmpty() ? value : comment + " " + value;
             }
         }
-        return "";
-    }
 
-    private static int findNextMainItemRow(Sheet sheet, int startRow) {
-        for (int i = startRow + 1; i <= sheet.getLastRowNum(); i++) {
-            Row row = sheet.getRow(i);
-            if (row != null) {
-                for (int j = 0; j < row.getLastCellNum(); j++) {
-                    String number = getCellValue(row.getCell(j));
-                    if (MAIN_CRITERION_PATTERN.matcher(number).find()) {
-                        return i;
-                    }
+        if (!subItem.isEmpty() || !evaluation.isEmpty() || !comment.isEmpty()) {
+            String effectiveSubItemText = "";
+            for (int j = 0; j < row.length; j++) {
+                if (!CellTokens.has(tokenAt(tokens, j), CellTokens.EMPTY | CellTokens.ANGLE_MARK | CellTokens.EVALUATION | CellTokens.SUB_NUMBER)) {
+                    effectiveSubItemText = cellText(row, j);
+                    break;
                 }
             }
+            if (!effectiveSubItemText.isEmpty() || !subItem.isEmpty()) {
+                Map<String, String> entry = new HashMap<>();
+                entry.put("MainItem", mainItem);
+                entry.put("SubItem", subItem.isEmpty() ? effectiveSubItemText : subItem + " " + effectiveSubItemText);
+                entry.put("Evaluation", evaluation);
+                entry.put("Comment", comment.trim());
+                data.add(entry);
+                logger.trace("Evaluation item at row {}: Main={}, Sub={}, Eval={}, Comment={}",
+                        rowNum, mainItem, entry.get("SubItem"), evaluation, entry.get("Comment"));
+            }
         }
-        return sheet.getLastRowNum() + 1;
-    }
-
-    private static String getMainItemByNumber(String mainItemNo, Map<String, Map<String, String>> mainSubItemMap) {
-        return mainSubItemMap.keySet().stream()
-                .filter(key -> key.startsWith(mainItemNo + "."))
-                .findFirst()
-                .orElse(null);
     }
 
-    private static String getSubItemByNumber(String mainItem, String subItemNo, Map<String, Map<String, String>> mainSubItemMap) {
-        if (mainItem == null) return null;
-        Map<String, String> subItems = mainSubItemMap.get(mainItem);
-        if (subItems == null) return null;
-        return subItems.get(subItemNo);
+    private static String getMainItemText(String[] row, short[] tokens) {
+        for (int j = 0; j < row.length; j++) {
+            if (CellTokens.has(tokenAt(tokens, j), CellTokens.MAIN_CRITERION)) {
+                return cellText(row, j);
+            }
+        }
+        return "";
     }
 
-    private static int findEvaluationStartRow(Sheet sheet) {
+    private static int findEvaluationStartRow(SheetGrid sheet) {
         for (int i = 0; i <= sheet.getLastRowNum(); i++) {
-            Row row = sheet.getRow(i);
-            if (row != null) {
-                for (int j = 0; j < row.getLastCellNum(); j++) {
-                    Cell cell = row.getCell(j);
-                    if (cell != null && EVAL_TABLE_HEADER.equals(getCellValue(cell))) {
-                        System.out.println("Evaluation table start found at row " + i + ", col " + j);
+            short[] tokens = sheet.getRowTokens(i);
+            if (tokens != null) {
+                for (int j = 0; j < tokens.length; j++) {
+                    if (CellTokens.has(tokens[j], CellTokens.EVAL_TABLE_HEADER)) {
+                        logger.debug("Evaluation table start found at row {}, col {}", i, j);
                         return i + 1;
                     }
                 }
             }
         }
-        System.out.println("Evaluation data not found in sheet: " + sheet.getSheetName());
+        logger.debug("Evaluation data not found in sheet: {}", sheet.getSheetName());
         return -1;
     }
 
-    private static String getCellValue(Cell cell) {
-        if (cell == null) {
-            System.out.println("Cell is null");
-            return "";
-        }
-
-        System.out.println("Cell at row=" + cell.getRowIndex() + ", col=" + cell.getColumnIndex() +
-                ", type=" + cell.getCellType());
-
-        DataFormatter formatter = new DataFormatter();
-        String value;
-
-        try {
-            switch (cell.getCellType()) {
-                case NUMERIC:
-                    double numericValue = cell.getNumericCellValue();
-                    String formatString = cell.getCellStyle().getDataFormatString();
-                    System.out.println("Numeric value: " + numericValue +
-                            ", Format string: " + formatString +
-                            ", Is date formatted: " + DateUtil.isCellDateFormatted(cell));
-
-                    if (DateUtil.isCellDateFormatted(cell)) {
-                        value = formatter.formatCellValue(cell);
-                    } else {
-                        if (numericValue > 25569 && numericValue < 73050) {
-                            Date date = DateUtil.getJavaDate(numericValue, false);
-                            SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy", Locale.US);
-                            value = sdf.format(date);
-                        } else {
-                            value = formatter.formatCellValue(cell);
-                        }
-                    }
-                    break;
-
-                case STRING:
-                    value = cell.getStringCellValue();
-                    break;
-
-                case FORMULA:
-                    FormulaEvaluator evaluator = cell.getSheet().getWorkbook().getCreationHelper().createFormulaEvaluator();
-                    CellValue formulaResult = evaluator.evaluate(cell);
-                    System.out.println("Formula: " + cell.getCellFormula() +
-                            ", Result type: " + formulaResult.getCellType() +
-                            ", Result value: " + formulaResult.formatAsString());
-                    value = formatter.formatCellValue(cell, evaluator);
-                    break;
-
-                case BLANK:
-                    value = "";
-                    break;
-
-                default:
-                    value = formatter.formatCellValue(cell);
-                    break;
+    static SheetGrid toSheetGrid(Sheet sheet, CellNormalizer normalizer) {
+        SheetGrid grid = new SheetGrid(sheet.getSheetName());
+        for (int i = 0; i <= sheet.getLastRowNum(); i++) {
+            Row row = sheet.getRow(i);
+            if (row == null) continue;
+            String[] cells = new String[Math.max(row.getLastCellNum(), 0)];
+            for (int j = 0; j < cells.length; j++) {
+                cells[j] = normalizer.getCellValue(row.getCell(j));
             }
-        } catch (Exception e) {
-            System.out.println("Error processing cell: " + e.getMessage());
-            value = formatter.formatCellValue(cell);
+            grid.setRow(i, cells);
         }
-
-        value = value.trim()
-                .replaceAll("\\s+", " ")
-                .replaceAll("　", " ")
-                .replaceAll("．", ".")
-                .replaceAll("✕", "XX");
-
-        System.out.println("Final formatted value: '" + value + "'");
-        return value;
+        return grid;
     }
 }
\ No newline at end of file
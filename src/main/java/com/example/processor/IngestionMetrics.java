@@ -0,0 +1,92 @@
+package com.example.processor;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide counters kept by the ingestion pipeline since the application started.
+ */
+public final class IngestionMetrics {
+
+    private static final AtomicLong formulaCellsFromCache = new AtomicLong();
+    private static final AtomicLong formulaCellsEvaluated = new AtomicLong();
+    private static final AtomicLong formulaCellsWithoutValue = new AtomicLong();
+    private static final AtomicLong workbooksLoadedForFormulas = new AtomicLong();
+    private static final AtomicLong rowsInserted = new AtomicLong();
+    private static final AtomicLong insertChunks = new AtomicLong();
+    private static final AtomicLong insertNanos = new AtomicLong();
+    private static final AtomicLong rowsLoaded = new AtomicLong();
+    private static final AtomicLong loadDataChunks = new AtomicLong();
+    private static final AtomicLong loadDataNanos = new AtomicLong();
+
+    private IngestionMetrics() {
+    }
+
+    // Formula cells read from the result stored in the file
+    public static long formulaCellsFromCache() {
+        return formulaCellsFromCache.get();
+    }
+
+    // Formula cells computed by a FormulaEvaluator because the file had no stored result
+    public static long formulaCellsEvaluated() {
+        return formulaCellsEvaluated.get();
+    }
+
+    // Formula cells without a stored result in streaming mode; they read as empty unless
+    // IngestionOptions.evaluateUncachedFormulas has their sheets read again and evaluated
+    public static long formulaCellsWithoutValue() {
+        return formulaCellsWithoutValue.get();
+    }
+
+    // Streaming uploads that loaded the whole workbook to evaluate such formula cells
+    public static long workbooksLoadedForFormulas() {
+        return workbooksLoadedForFormulas.get();
+    }
+
+    // Rows written by BulkRowWriter with multi-row INSERT statements, one chunk per statement
+    public static long rowsInserted() {
+        return rowsInserted.get();
+    }
+
+    public static long insertChunks() {
+        return insertChunks.get();
+    }
+
+    public static long insertMillis() {
+        return insertNanos.get() / 1_000_000;
+    }
+
+    // Rows written by BulkRowWriter with LOAD DATA LOCAL INFILE, one chunk per spool file
+    public static long rowsLoaded() {
+        return rowsLoaded.get();
+    }
+
+    public static long loadDataChunks() {
+        return loadDataChunks.get();
+    }
+
+    public static long loadDataMillis() {
+        return loadDataNanos.get() / 1_000_000;
+    }
+
+    static void recordFormulaCells(long fromCache, long evaluated, long withoutValue) {
+        formulaCellsFromCache.addAndGet(fromCache);
+        formulaCellsEvaluated.addAndGet(evaluated);
+        formulaCellsWithoutValue.addAndGet(withoutValue);
+    }
+
+    static void recordWorkbookLoadedForFormulas() {
+        workbooksLoadedForFormulas.incrementAndGet();
+    }
+
+    static void recordInsertChunk(int rows, long nanos) {
+        rowsInserted.addAndGet(rows);
+        insertChunks.incrementAndGet();
+        insertNanos.addAndGet(nanos);
+    }
+
+    static void recordLoadDataChunk(int rows, long nanos) {
+        rowsLoaded.addAndGet(rows);
+        loadDataChunks.incrementAndGet();
+        loadDataNanos.addAndGet(nanos);
+    }
+}
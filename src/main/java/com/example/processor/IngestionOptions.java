@@ -0,0 +1,62 @@
+package com.example.processor;
+
+import java.util.Set;
+
+/**
+ * Switches controlling how {@link ExcelProcessor#processExcelFile} reads and stores a workbook.
+ * The defaults reproduce the original behaviour (whole workbook loaded as an XSSFWorkbook).
+ */
+public class IngestionOptions {
+    // Parse sheets with the SAX event model instead of loading the whole workbook into memory
+    public boolean streaming = false;
+
+    // DOM mode only: read formula cells from the results stored in the file and evaluate only those
+    // without one. Streaming mode always reads the stored results.
+    public boolean cachedFormulaValues = false;
+
+    // Streaming mode only: a sheet with formula cells that have no stored result is read again from
+    // the whole workbook loaded as an XSSFWorkbook, which evaluates them. That file then needs as much
+    // memory as in DOM mode. Without it those cells read as empty.
+    public boolean evaluateUncachedFormulas = false;
+
+    // Number of sheets parsed concurrently per workbook; results are still written one sheet at a time.
+    // In DOM mode the cells of all sheets are read and formatted on the calling thread first, since an
+    // XSSFWorkbook is not thread-safe; only the extraction from those grids runs in parallel.
+    public int parallelism = 1;
+
+    // On re-upload, write only the rows that changed instead of deleting and re-inserting the response's data
+    public boolean diffReuploads = false;
+
+    // Write all sheets of the workbook in one transaction instead of committing each sheet;
+    // a failure in any sheet leaves nothing of the workbook stored
+    public boolean workbookTransaction = false;
+
+    // Read each sheet's table position and columns from the plan stored for its template, if the
+    // sheet's header row still matches, instead of detecting them again
+    public boolean reuseParsePlans = false;
+
+    // Sheet names to store; null stores every sheet not on the built-in skip list
+    public Set<String> includeSheets = null;
+
+    // Sheet names never to store, on top of the built-in skip list
+    public Set<String> excludeSheets = null;
+
+    // Notified as sheets are stored; null when nobody is tracking the upload
+    public IngestionProgress progress = null;
+
+    public IngestionOptions() {
+    }
+
+    public IngestionOptions(IngestionOptions other) {
+        this.streaming = other.streaming;
+        this.cachedFormulaValues = other.cachedFormulaValues;
+        this.evaluateUncachedFormulas = other.evaluateUncachedFormulas;
+        this.parallelism = other.parallelism;
+        this.diffReuploads = other.diffReuploads;
+        this.workbookTransaction = other.workbookTransaction;
+        this.reuseParsePlans = other.reuseParsePlans;
+        this.includeSheets = other.includeSheets;
+        this.excludeSheets = other.excludeSheets;
+        this.progress = other.progress;
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.processor;
+
+/**
+ * Callbacks from {@link ExcelProcessor#processExcelFile} as a workbook is stored.
+ * Called on the thread that writes to the database, in sheet order.
+ */
+public interface IngestionProgress {
+
+    // Number of sheets that will be parsed and stored (cover and summary sheets excluded)
+    default void sheetsFound(int sheetCount) {
+    }
+
+    // The sheet's transaction has been committed
+    default void sheetStored(String sheetName, int metadataRows, int evaluationRows) {
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.processor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Brings the stored EvaluationData / ResponseMetadata rows of an existing response in line with a
+ * re-uploaded sheet by writing only the rows that differ, instead of deleting and re-inserting all.
+ *
+ * Rows are matched on their key (MainItem + SubItem, or HeaderKey) and the occurrence of that key.
+ * Readers list rows in ID order, so a stored row is only kept while the matched rows stay in the
+ * same order as the sheet; from the first row that cannot be kept in place, the remaining rows are
+ * re-inserted after the kept ones.
+ */
+class ResponseDiffWriter {
+
+    static class DiffCounts {
+        int updated;
+        int inserted;
+        int deleted;
+
+        @Override
+        public String toString() {
+            return updated + " updated, " + inserted + " inserted, " + deleted + " deleted";
+        }
+    }
+
+    private static class StoredRow {
+        final int id;
+        final String key;
+        final String[] values;
+
+        StoredRow(int id, String key, String[] values) {
+            this.id = id;
+            this.key = key;
+            this.values = values;
+        }
+    }
+
+    private static class Plan {
+        final List<StoredRow> updates = new ArrayList<>();
+        final List<String[]> updateValues = new ArrayList<>();
+        final List<Integer> deletes = new ArrayList<>();
+        final List<Integer> inserts = new ArrayList<>(); // indexes into the new rows
+    }
+
+    static DiffCounts applyEvaluationData(Connection conn, int responseId, List<Map<String, String>> evalData) throws SQLException {
+        List<StoredRow> stored = new ArrayList<>();
+        String selectSql = "SELECT DataID, MainItem, SubItem, Evaluation, Comment FROM EvaluationData WHERE ResponseID = ? ORDER BY DataID";
+        try (PreparedStatement pstmt = conn.prepareStatement(selectSql)) {
+            pstmt.setInt(1, responseId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    stored.add(new StoredRow(rs.getInt("DataID"), evaluationKey(rs.getString("MainItem"), rs.getString("SubItem")),
+                            new String[]{rs.getString("Evaluation"), rs.getString("Comment")}));
+                }
+            }
+        }
+
+        List<String> keys = new ArrayList<>(evalData.size());
+        List<String[]> values = new ArrayList<>(evalData.size());
+        for (Map<String, String> entry : evalData) {
+            keys.add(evaluationKey(entry.get("MainItem"), entry.get("SubItem")));
+            values.add(new String[]{entry.get("Evaluation"), entry.get("Comment")});
+        }
+        Plan plan = plan(stored, keys, values);
+
+        try (PreparedStatement delete = conn.prepareStatement("DELETE FROM EvaluationData WHERE DataID = ?");
+             PreparedStatement update = conn.prepareStatement("UPDATE EvaluationData SET Evaluation = ?, Comment = ? WHERE DataID = ?");
+             PreparedStatement insert = conn.prepareStatement("INSERT INTO EvaluationData (ResponseID, MainItem, SubItem, Evaluation, Comment) VALUES (?, ?, ?, ?, ?)")) {
+            for (int dataId : plan.deletes) {
+                delete.setInt(1, dataId);
+                delete.addBatch();
+            }
+            for (int i = 0; i < plan.updates.size(); i++) {
+                String[] newValues = plan.updateValues.get(i);
+                update.setString(1, newValues[0]);
+                update.setString(2, newValues[1]);
+                update.setInt(3, plan.updates.get(i).id);
+                update.addBatch();
+            }
+            for (int index : plan.inserts) {
+                Map<String, String> entry = evalData.get(index);
+                insert.setInt(1, responseId);
+                insert.setString(2, entry.get("MainItem"));
+                insert.setString(3, entry.get("SubItem"));
+                insert.setString(4, entry.get("Evaluation"));
+                insert.setString(5, entry.get("Comment"));
+                insert.addBatch();
+            }
+            // Deletes first so that every inserted row gets an ID after the rows that were kept
+            return execute(plan, delete, update, insert);
+        }
+    }
+
+    static DiffCounts applyMetadata(Connection conn, int responseId, Map<String, String> metadata) throws SQLException {
+        List<StoredRow> stored = new ArrayList<>();
+        String selectSql = "SELECT MetadataID, HeaderKey, HeaderValue FROM ResponseMetadata WHERE ResponseID = ? ORDER BY MetadataID";
+        try (PreparedStatement pstmt = conn.prepareStatement(selectSql)) {
+            pstmt.setInt(1, responseId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    stored.add(new StoredRow(rs.getInt("MetadataID"), rs.getString("HeaderKey"), new String[]{rs.getString("HeaderValue")}));
+                }
+            }
+        }
+
+        List<String> keys = new ArrayList<>(metadata.keySet());
+        List<String[]> values = new ArrayList<>(metadata.size());
+        for (String value : metadata.values()) {
+            values.add(new String[]{value});
+        }
+        Plan plan = plan(stored, keys, values);
+
+        try (PreparedStatement delete = conn.prepareStatement("DELETE FROM ResponseMetadata WHERE MetadataID = ?");
+             PreparedStatement update = conn.prepareStatement("UPDATE ResponseMetadata SET HeaderValue = ? WHERE MetadataID = ?");
+             PreparedStatement insert = conn.prepareStatement("INSERT INTO ResponseMetadata (ResponseID, HeaderKey, HeaderValue) VALUES (?, ?, ?)")) {
+            for (int metadataId : plan.deletes) {
+                delete.setInt(1, metadataId);
+                delete.addBatch();
+            }
+            for (int i = 0; i < plan.updates.size(); i++) {
+                update.setString(1, plan.updateValues.get(i)[0]);
+                update.setInt(2, plan.updates.get(i).id);
+                update.addBatch();
+            }
+            for (int index : plan.inserts) {
+                insert.setInt(1, responseId);
+                insert.setString(2, keys.get(index));
+                insert.setString(3, values.get(index)[0]);
+                insert.addBatch();
+            }
+            return execute(plan, delete, update, insert);
+        }
+    }
+
+    private static DiffCounts execute(Plan plan, PreparedStatement delete, PreparedStatement update, PreparedStatement insert) throws SQLException {
+        DiffCounts counts = new DiffCounts();
+        if (!plan.deletes.isEmpty()) {
+            delete.executeBatch();
+            counts.deleted = plan.deletes.size();
+        }
+        if (!plan.updates.isEmpty()) {
+            update.executeBatch();
+            counts.updated = plan.updates.size();
+        }
+        if (!plan.inserts.isEmpty()) {
+            insert.executeBatch();
+            counts.inserted = plan.inserts.size();
+        }
+        return counts;
+    }
+
+    private static Plan plan(List<StoredRow> stored, List<String> newKeys, List<String[]> newValues) {
+        // n-th stored row with a given key, in ID order
+        Map<String, List<StoredRow>> storedByKey = new HashMap<>();
+        for (StoredRow row : stored) {
+            storedByKey.computeIfAbsent(row.key, k -> new ArrayList<>()).add(row);
+        }
+
+        Plan plan = new Plan();
+        Map<String, Integer> occurrences = new HashMap<>();
+        Set<Integer> kept = new HashSet<>();
+        int lastKeptId = Integer.MIN_VALUE;
+        boolean inPlace = true;
+        for (int i = 0; i < newKeys.size(); i++) {
+            String key = newKeys.get(i);
+            int occurrence = occurrences.merge(key, 1, Integer::sum) - 1;
+            List<StoredRow> candidates = storedByKey.get(key);
+            StoredRow match = candidates != null && occurrence < candidates.size() ? candidates.get(occurrence) : null;
+
+            if (inPlace && match != null && match.id > lastKeptId) {
+                kept.add(match.id);
+                lastKeptId = match.id;
+                if (!sameValues(match.values, newValues.get(i))) {
+                    plan.updates.add(match);
+                    plan.updateValues.add(newValues.get(i));
+                }
+            } else {
+                inPlace = false;
+                plan.inserts.add(i);
+            }
+        }
+        for (StoredRow row : stored) {
+            if (!kept.contains(row.id)) {
+                plan.deletes.add(row.id);
+            }
+        }
+        return plan;
+    }
+
+    private static boolean sameValues(String[] storedValues, String[] newValues) {
+        for (int i = 0; i < storedValues.length; i++) {
+            if (!Objects.equals(storedValues[i], newValues[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String evaluationKey(String mainItem, String subItem) {
+        return mainItem + '\u0000' + subItem;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.processor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Normalized text of one worksheet, indexed by row and column, built once per sheet and
+ * shared by all of the sheet scanners in {@link ExcelProcessor}.
+ * Rows that do not exist in the sheet are kept as null so row numbers line up
+ * with the original workbook; cells inside a row are never null ("" for blanks).
+ * Each cell also carries its {@link CellTokens} flags, computed once when the row is added.
+ */
+class SheetGrid {
+    private static final String[] NO_CELLS = new String[0];
+    private static final short[] NO_TOKENS = new short[0];
+
+    private final String sheetName;
+    private final List<String[]> rows = new ArrayList<>();
+    private final List<short[]> tokens = new ArrayList<>();
+    // Survey sheets repeat the same few values ("", "1:Good", "①", ...) in every row
+    private final Map<String, String> internedValues = new HashMap<>();
+    private final Map<String, Short> tokensByValue = new HashMap<>();
+
+    SheetGrid(String sheetName) {
+        this.sheetName = sheetName;
+    }
+
+    String getSheetName() {
+        return sheetName;
+    }
+
+    void setRow(int rowIndex, String[] cells) {
+        while (rows.size() <= rowIndex) {
+            rows.add(null);
+            tokens.add(null);
+        }
+        if (cells == null || cells.length == 0) {
+            rows.set(rowIndex, NO_CELLS);
+            tokens.set(rowIndex, NO_TOKENS);
+            return;
+        }
+        short[] rowTokens = new short[cells.length];
+        for (int j = 0; j < cells.length; j++) {
+            String value = internedValues.computeIfAbsent(cells[j] != null ? cells[j] : "", v -> v);
+            cells[j] = value;
+            rowTokens[j] = tokensByValue.computeIfAbsent(value, v -> (short) CellTokens.classify(v));
+        }
+        rows.set(rowIndex, cells);
+        tokens.set(rowIndex, rowTokens);
+    }
+
+    // Same contract as Sheet.getLastRowNum(): -1 for a sheet without rows
+    int getLastRowNum() {
+        return rows.size() - 1;
+    }
+
+    String[] getRow(int rowIndex) {
+        if (rowIndex < 0 || rowIndex >= rows.size()) {
+            return null;
+        }
+        return rows.get(rowIndex);
+    }
+
+    short[] getRowTokens(int rowIndex) {
+        if (rowIndex < 0 || rowIndex >= tokens.size()) {
+            return null;
+        }
+        return tokens.get(rowIndex);
+    }
+
+    static String cellText(String[] row, int column) {
+        if (row == null || column < 0 || column >= row.length) {
+            return "";
+        }
+        return row[column];
+    }
+
+    // Missing cells read as EMPTY, like cellText() reads them as ""
+    static int tokenAt(short[] rowTokens, int column) {
+        if (rowTokens == null || column < 0 || column >= rowTokens.length) {
+            return CellTokens.EMPTY;
+        }
+        return rowTokens[column];
+    }
+}
@@ -0,0 +1,278 @@
+package com.example.processor;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads an .xlsx file sheet by sheet through POI's SAX event model
+ * (XSSFReader / XSSFSheetXMLHandler) instead of building an XSSFWorkbook.
+ * No object model of the workbook is built; each sheet read is still held whole as a
+ * {@link SheetGrid}, so memory grows with the largest sheets in flight rather than the file.
+ *
+ * The event model can only report the result Excel stored for a formula. Formula cells that have
+ * none (files written by POI or openpyxl) read as empty and are counted in
+ * {@link IngestionMetrics#formulaCellsWithoutValue()}. Only with
+ * {@link IngestionOptions#evaluateUncachedFormulas} is such a sheet read again from an
+ * XSSFWorkbook through {@link CellNormalizer}, which evaluates them; that workbook is loaded once,
+ * on the first such sheet, and costs as much memory as DOM mode.
+ */
+class StreamingWorkbookReader implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(StreamingWorkbookReader.class);
+
+    private final File file;
+    private final boolean evaluateUncachedFormulas;
+    private final OPCPackage pkg;
+    private final XSSFReader reader;
+    private final ReadOnlySharedStringsTable sharedStrings;
+    private final StylesTable styles;
+    private final List<String> sheetNames = new ArrayList<>();
+    private final List<PackagePart> sheetParts = new ArrayList<>();
+    private XSSFWorkbook evaluatingWorkbook;
+    private CellNormalizer evaluatingNormalizer;
+
+    StreamingWorkbookReader(File file, boolean evaluateUncachedFormulas) throws Exception {
+        this.file = file;
+        this.evaluateUncachedFormulas = evaluateUncachedFormulas;
+        this.pkg = OPCPackage.open(file, PackageAccess.READ);
+        try {
+            this.reader = new XSSFReader(pkg);
+            this.sharedStrings = new ReadOnlySharedStringsTable(pkg);
+            this.styles = reader.getStylesTable();
+
+            // Sheet names come from workbook.xml; no sheet XML is read here
+            XSSFReader.SheetIterator it = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (it.hasNext()) {
+                it.next().close();
+                sheetNames.add(it.getSheetName());
+                sheetParts.add(it.getSheetPart());
+            }
+        } catch (Exception e) {
+            pkg.revert();
+            throw e;
+        }
+    }
+
+    List<String> getSheetNames() {
+        return Collections.unmodifiableList(sheetNames);
+    }
+
+    /**
+     * Parses the sheet at {@code sheetIndex} (workbook order). Each call opens its own stream
+     * over the read-only package, so different sheets can be parsed on different threads.
+     */
+    SheetGrid readSheet(int sheetIndex) throws Exception {
+        SheetGrid grid;
+        try (InputStream sheetData = sheetParts.get(sheetIndex).getInputStream()) {
+            grid = readSheet(sheetNames.get(sheetIndex), sheetData);
+        }
+        return grid != null ? grid : readSheetEvaluated(sheetIndex);
+    }
+
+    // Null if the sheet has formula cells without a stored result and those are to be evaluated
+    private SheetGrid readSheet(String sheetName, InputStream sheetData) throws IOException, SAXException {
+        SheetGrid grid = new SheetGrid(sheetName);
+        GridCollector collector = new GridCollector(grid);
+        XMLReader parser;
+        try {
+            parser = XMLHelper.newXMLReader();
+        } catch (javax.xml.parsers.ParserConfigurationException e) {
+            throw new SAXException("Unable to create SAX parser: " + e.getMessage(), e);
+        }
+        ColumnTrackingHandler handler = new ColumnTrackingHandler(styles, sharedStrings, collector);
+        parser.setContentHandler(handler);
+        parser.parse(new InputSource(sheetData));
+        if (handler.formulaCellsWithoutValue > 0 && evaluateUncachedFormulas) {
+            IngestionMetrics.recordFormulaCells(0, 0, handler.formulaCellsWithoutValue);
+            return null;
+        }
+        if (handler.formulaCellsWithoutValue > 0) {
+            logger.info("{} formula cells in sheet {} of {} have no stored result and read as empty",
+                    handler.formulaCellsWithoutValue, sheetName, file.getName());
+        }
+        IngestionMetrics.recordFormulaCells(handler.formulaCellsFromCache, 0, handler.formulaCellsWithoutValue);
+        return grid;
+    }
+
+    // Formulas may refer to other sheets, so the whole workbook is loaded; cell access on it is serialized
+    private synchronized SheetGrid readSheetEvaluated(int sheetIndex) throws Exception {
+        if (evaluatingWorkbook == null) {
+            logger.info("Sheet {} of {} has formula cells without a stored result; loading the whole workbook to evaluate them",
+                    sheetNames.get(sheetIndex), file.getName());
+            IngestionMetrics.recordWorkbookLoadedForFormulas();
+            evaluatingWorkbook = new XSSFWorkbook(OPCPackage.open(file, PackageAccess.READ));
+            evaluatingNormalizer = new CellNormalizer(evaluatingWorkbook, true);
+        }
+        int fromCache = evaluatingNormalizer.formulaCellsFromCache;
+        int evaluated = evaluatingNormalizer.formulaCellsEvaluated;
+        SheetGrid grid = ExcelProcessor.toSheetGrid(evaluatingWorkbook.getSheetAt(sheetIndex), evaluatingNormalizer);
+        IngestionMetrics.recordFormulaCells(evaluatingNormalizer.formulaCellsFromCache - fromCache,
+                evaluatingNormalizer.formulaCellsEvaluated - evaluated, 0);
+        return grid;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Opened read-only, so revert instead of close to avoid rewriting the file
+        pkg.revert();
+        synchronized (this) {
+            if (evaluatingWorkbook != null) {
+                evaluatingWorkbook.getPackage().revert();
+                evaluatingWorkbook = null;
+            }
+        }
+    }
+
+    // Column index (0-based) of an A1-style reference such as "AB12"
+    private static int columnIndex(String cellReference) {
+        int column = 0;
+        for (int i = 0; i < cellReference.length(); i++) {
+            char c = cellReference.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                break;
+            }
+            column = column * 26 + (c - 'A' + 1);
+        }
+        return column - 1;
+    }
+
+    /**
+     * Records the column of every &lt;c&gt; element, including styled cells without a value,
+     * so a row gets the same width as Row.getLastCellNum() would report in the DOM model.
+     */
+    private static class ColumnTrackingHandler extends XSSFSheetXMLHandler {
+        private final GridCollector collector;
+        private final SurveyDataFormatter formatter;
+        // The handler reports the stored result of a formula cell; one without <v> reads as empty
+        private boolean cellHasFormula;
+        private boolean cellHasValue;
+        int formulaCellsFromCache;
+        int formulaCellsWithoutValue;
+
+        ColumnTrackingHandler(StylesTable styles, ReadOnlySharedStringsTable strings, GridCollector collector) {
+            this(styles, strings, collector, new SurveyDataFormatter());
+        }
+
+        private ColumnTrackingHandler(StylesTable styles, ReadOnlySharedStringsTable strings, GridCollector collector, SurveyDataFormatter formatter) {
+            super(styles, strings, collector, formatter, false);
+            this.collector = collector;
+            this.formatter = formatter;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            if ("c".equals(localName)) {
+                String ref = attributes.getValue("r");
+                collector.startCell(ref != null ? columnIndex(ref) : collector.nextColumn);
+                cellHasFormula = false;
+                cellHasValue = false;
+                formatter.formulaResult = false;
+            } else if ("f".equals(localName)) {
+                cellHasFormula = true;
+                formatter.formulaResult = true;
+            } else if ("v".equals(localName)) {
+                cellHasValue = true;
+            }
+            super.startElement(uri, localName, qName, attributes);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            if ("c".equals(localName) && cellHasFormula) {
+                if (cellHasValue) {
+                    formulaCellsFromCache++;
+                } else {
+                    formulaCellsWithoutValue++;
+                }
+            }
+            super.endElement(uri, localName, qName);
+        }
+    }
+
+    private static class GridCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final SheetGrid grid;
+        private String[] cells = new String[64];
+        private int width;
+        private int currentColumn;
+        private int nextColumn;
+
+        GridCollector(SheetGrid grid) {
+            this.grid = grid;
+        }
+
+        void startCell(int column) {
+            currentColumn = column;
+            nextColumn = column + 1;
+            width = Math.max(width, column + 1);
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            Arrays.fill(cells, 0, Math.min(width, cells.length), null);
+            width = 0;
+            nextColumn = 0;
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            if (currentColumn >= cells.length) {
+                cells = Arrays.copyOf(cells, Math.max(cells.length * 2, currentColumn + 1));
+            }
+            cells[currentColumn] = CellNormalizer.normalize(formattedValue != null ? formattedValue : "");
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            String[] row = new String[width];
+            for (int j = 0; j < width; j++) {
+                String value = j < cells.length ? cells[j] : null;
+                row[j] = value != null ? value : "";
+            }
+            grid.setRow(rowNum, row);
+        }
+    }
+
+    /**
+     * Mirrors CellNormalizer.getCellValue for numeric cells: serial numbers in the
+     * 1970-2099 range that are not date formatted are still rendered as MM/dd/yyyy.
+     * Numeric formula results are formatted as is, as CellNormalizer does.
+     */
+    private static class SurveyDataFormatter extends DataFormatter {
+        private final SimpleDateFormat dateLikeFormat = new SimpleDateFormat("MM/dd/yyyy", Locale.US);
+        boolean formulaResult;
+
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString) {
+            if (!formulaResult && !DateUtil.isADateFormat(formatIndex, formatString) && value > 25569 && value < 73050) {
+                return dateLikeFormat.format(DateUtil.getJavaDate(value, false));
+            }
+            return super.formatRawCellContents(value, formatIndex, formatString);
+        }
+    }
+}
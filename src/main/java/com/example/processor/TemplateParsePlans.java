@@ -0,0 +1,119 @@
+package com.example.processor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Where the evaluation table of each sheet of a template was found, kept in the TemplateParsePlans
+ * table and cached in memory. A later upload of the same template takes the table position and its
+ * evaluation / comment columns from the plan instead of searching for them, as long as the sheet
+ * still has the same header row at the same place; otherwise the sheet goes through full detection
+ * and its plan is replaced. Only layouts whose columns are named by the header row get a plan, so
+ * a matching plan always gives the same result as detection.
+ */
+class TemplateParsePlans {
+
+    private static final Logger logger = LoggerFactory.getLogger(TemplateParsePlans.class);
+
+    static class Plan {
+        final int evalStartRow;
+        final int evalColumn;
+        final int commentColumn;
+        // Text of the 評価項目 header row the plan was detected from, cells joined by tabs
+        final String headerRowText;
+
+        Plan(int evalStartRow, int evalColumn, int commentColumn, String headerRowText) {
+            this.evalStartRow = evalStartRow;
+            this.evalColumn = evalColumn;
+            this.commentColumn = commentColumn;
+            this.headerRowText = headerRowText;
+        }
+
+        static Plan detected(SheetGrid sheet, int evalStartRow, int evalColumn, int commentColumn) {
+            return new Plan(evalStartRow, evalColumn, commentColumn, headerRowText(sheet, evalStartRow));
+        }
+
+        // True if the header row is unchanged and is still the first row holding a 評価項目 header
+        boolean matches(SheetGrid sheet) {
+            if (!headerRowText.equals(headerRowText(sheet, evalStartRow))) {
+                return false;
+            }
+            for (int i = 0; i < evalStartRow - 1; i++) {
+                short[] tokens = sheet.getRowTokens(i);
+                if (tokens == null) continue;
+                for (short token : tokens) {
+                    if (CellTokens.has(token, CellTokens.EVAL_TABLE_HEADER)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "evalStartRow=" + evalStartRow + ", evalColumn=" + evalColumn + ", commentColumn=" + commentColumn;
+        }
+
+        private static String headerRowText(SheetGrid sheet, int evalStartRow) {
+            String[] headerRow = sheet.getRow(evalStartRow - 1);
+            // Normalized cells never contain a tab, so the joined text identifies the row
+            return headerRow != null ? String.join("\t", headerRow) : "";
+        }
+    }
+
+    // TemplateID -> sheet name -> plan
+    private static final Map<Integer, Map<String, Plan>> cache = new ConcurrentHashMap<>();
+
+    private TemplateParsePlans() {
+    }
+
+    // Plans of the template's sheets, keyed by sheet name; the table is created by SchemaMigrations
+    static Map<String, Plan> load(Connection conn, int templateId) throws SQLException {
+        Map<String, Plan> cached = cache.get(templateId);
+        if (cached != null) {
+            return cached;
+        }
+
+        Map<String, Plan> plans = new ConcurrentHashMap<>();
+        String sql = "SELECT SheetName, EvalStartRow, EvalColumn, CommentColumn, HeaderRowText FROM TemplateParsePlans WHERE TemplateID = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, templateId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    plans.put(rs.getString("SheetName"), new Plan(rs.getInt("EvalStartRow"), rs.getInt("EvalColumn"),
+                            rs.getInt("CommentColumn"), rs.getString("HeaderRowText")));
+                }
+            }
+        }
+        Map<String, Plan> existing = cache.putIfAbsent(templateId, plans);
+        return existing != null ? existing : plans;
+    }
+
+    static void save(Connection conn, int templateId, String sheetName, Plan plan) throws SQLException {
+        String sql = """
+            INSERT INTO TemplateParsePlans (TemplateID, SheetName, EvalStartRow, EvalColumn, CommentColumn, HeaderRowText)
+            VALUES (?, ?, ?, ?, ?, ?)
+            ON DUPLICATE KEY UPDATE EvalStartRow = VALUES(EvalStartRow), EvalColumn = VALUES(EvalColumn),
+                CommentColumn = VALUES(CommentColumn), HeaderRowText = VALUES(HeaderRowText), UpdatedAt = NOW()
+        """;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, templateId);
+            pstmt.setString(2, sheetName);
+            pstmt.setInt(3, plan.evalStartRow);
+            pstmt.setInt(4, plan.evalColumn);
+            pstmt.setInt(5, plan.commentColumn);
+            pstmt.setString(6, plan.headerRowText);
+            pstmt.executeUpdate();
+        }
+        cache.computeIfAbsent(templateId, k -> new ConcurrentHashMap<>()).put(sheetName, plan);
+        logger.debug("Stored parse plan for template {}, sheet {}: {}", templateId, sheetName, plan);
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.processor;
+
+import org.apache.poi.util.XMLHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Reads the sheet names of an .xlsx file from xl/workbook.xml alone, without inflating any sheet,
+ * shared string or style part. The names are all the template fingerprint (InternalTemplateCategory)
+ * needs, so template lookup and the unchanged-upload check can run before the workbook is parsed.
+ * Both readers return null when the names cannot be read this way; callers then take them from the
+ * parsed workbook, which also reports a damaged file the same way as before.
+ */
+class WorkbookFingerprint {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkbookFingerprint.class);
+    private static final String WORKBOOK_PART = "xl/workbook.xml";
+
+    private WorkbookFingerprint() {
+    }
+
+    static List<String> readSheetNames(Path file) {
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            ZipEntry entry = zip.getEntry(WORKBOOK_PART);
+            if (entry == null) {
+                return null;
+            }
+            try (InputStream in = zip.getInputStream(entry)) {
+                return parseSheetNames(in);
+            }
+        } catch (IOException | SAXException e) {
+            logger.warn("Could not read sheet names from {}: {}", WORKBOOK_PART, e.getMessage());
+            return null;
+        }
+    }
+
+    // Stops at xl/workbook.xml, which Excel writes ahead of the sheet parts
+    static List<String> readSheetNames(InputStream zipContent) {
+        try {
+            ZipInputStream zip = new ZipInputStream(zipContent);
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (WORKBOOK_PART.equals(entry.getName())) {
+                    return parseSheetNames(zip);
+                }
+            }
+            return null;
+        } catch (IOException | SAXException e) {
+            logger.warn("Could not read sheet names from {}: {}", WORKBOOK_PART, e.getMessage());
+            return null;
+        }
+    }
+
+    // Names of the <sheet> elements under <sheets>, in workbook order like POI's sheet iterators
+    private static List<String> parseSheetNames(InputStream workbookXml) throws IOException, SAXException {
+        List<String> sheetNames = new ArrayList<>();
+        XMLReader parser;
+        try {
+            parser = XMLHelper.newXMLReader();
+        } catch (ParserConfigurationException e) {
+            throw new SAXException("Unable to create SAX parser: " + e.getMessage(), e);
+        }
+        parser.setContentHandler(new DefaultHandler() {
+            private boolean inSheets;
+
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                if ("sheets".equals(localName)) {
+                    inSheets = true;
+                } else if (inSheets && "sheet".equals(localName)) {
+                    String name = attributes.getValue("name");
+                    sheetNames.add(name != null ? name : "");
+                }
+            }
+
+            @Override
+            public void endElement(String uri, String localName, String qName) {
+                if ("sheets".equals(localName)) {
+                    inSheets = false;
+                }
+            }
+        });
+        parser.parse(new InputSource(workbookXml));
+        return sheetNames;
+    }
+}
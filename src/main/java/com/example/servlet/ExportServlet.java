@@ -3,6 +3,8 @@ package com.example.servlet;
 
 import com.example.processor.DatabaseExcelExporter;
 import com.example.util.DatabaseConnection;
+import com.example.util.MemoryBudget;
+import com.example.util.TemplateNames;
 import javax.servlet.*;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.*;
@@ -16,6 +18,9 @@ import java.nio.charset.StandardCharsets; // Added for UTF-8 charset
 
 @WebServlet("/export")
 public class ExportServlet extends HttpServlet {
+	// How long an export waits for heap budget before answering 503
+	private static final long BUDGET_WAIT_MS = 10_000;
+
 	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		
 		HttpSession session = request.getSession(false);
@@ -31,42 +36,46 @@ public class ExportServlet extends HttpServlet {
 	        return;
 	    }
 
-	    // Check if data exists for the template category
-	    try (Connection conn = DatabaseConnection.getConnection();
-	         PreparedStatement pstmt = conn.prepareStatement("SELECT COUNT(*) FROM Templates WHERE TemplateCategory = ?")) {
-	        pstmt.setString(1, templateCategory);
-	        try (ResultSet rs = pstmt.executeQuery()) {
-	            if (rs.next() && rs.getInt(1) == 0) {
-	                sendJsonError(response, HttpServletResponse.SC_NOT_FOUND, "No data found for Template Category: " + templateCategory);
-	                return;
-	            }
+	    // One connection for the row count and the export itself
+	    try (Connection conn = DatabaseConnection.getConnection()) {
+	        // Check if data exists for the template category, and count the rows the export will hold in memory
+	        int templateId = TemplateNames.findTemplateId(conn, templateCategory);
+	        if (templateId == -1) {
+	            sendJsonError(response, HttpServletResponse.SC_NOT_FOUND, "No data found for Template Category: " + templateCategory);
+	            return;
 	        }
-	    } catch (SQLException e) {
-	        sendJsonError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Database error: " + e.getMessage());
-	        return;
-	    }
+	        long exportRows = countExportRows(conn, templateId);
 
-	    // Generate the Excel file first without committing the response
-	    try (Connection conn = DatabaseConnection.getConnection();
-	         ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-	        
-	        DatabaseExcelExporter.exportDatabaseToExcel(conn, baos, templateCategory);
-
-	        response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
-	        
-	        // FIXED: URL-encode the filename for Content-Disposition header
-	        String fileName = templateCategory.replaceAll(" ", "_") + "_export.xlsx";
-	        String encodedFileName = URLEncoder.encode(fileName, StandardCharsets.UTF_8.toString()).replaceAll("\\+", "%20"); // Handle spaces
-	        
-	        response.setHeader("Content-Disposition", "attachment; filename=\"" + encodedFileName + "\"");
-	        // For better compatibility with some browsers, might also use filename* as per RFC 5987,
-	        // but this simple filename encoding often suffices to prevent the IllegalArgumentException.
-	        // response.setHeader("Content-Disposition", "attachment; filename*=UTF-8''" + encodedFileName);
-
-
-	        try (OutputStream out = response.getOutputStream()) {
-	            baos.writeTo(out);
-	            out.flush();
+	        // The whole workbook is built in memory, so wait briefly for heap budget and turn the request away otherwise
+	        MemoryBudget.Reservation reservation = reserveExportMemory(exportRows);
+	        if (reservation == null) {
+	            response.setHeader("Retry-After", "30");
+	            sendJsonError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "The server is busy. Please try the export again shortly.");
+	            return;
+	        }
+
+	        // Generate the Excel file first without committing the response
+	        try (reservation;
+	             ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+
+	            DatabaseExcelExporter.exportDatabaseToExcel(conn, baos, templateCategory);
+
+	            response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+
+	            // FIXED: URL-encode the filename for Content-Disposition header
+	            String fileName = templateCategory.replaceAll(" ", "_") + "_export.xlsx";
+	            String encodedFileName = URLEncoder.encode(fileName, StandardCharsets.UTF_8.toString()).replaceAll("\\+", "%20"); // Handle spaces
+
+	            response.setHeader("Content-Disposition", "attachment; filename=\"" + encodedFileName + "\"");
+	            // For better compatibility with some browsers, might also use filename* as per RFC 5987,
+	            // but this simple filename encoding often suffices to prevent the IllegalArgumentException.
+	            // response.setHeader("Content-Disposition", "attachment; filename*=UTF-8''" + encodedFileName);
+
+
+	            try (OutputStream out = response.getOutputStream()) {
+	                baos.writeTo(out);
+	                out.flush();
+	            }
 	        }
 	    } catch (Exception e) {
 	        System.err.println("Error during Excel export for category: " + templateCategory);
@@ -80,6 +89,34 @@ public class ExportServlet extends HttpServlet {
 	    }
 	}
 
+    // Rows of the export query: it joins every metadata row of a response with every one of its
+    // evaluation rows, and the driver buffers the whole result set
+    private static long countExportRows(Connection conn, int templateId) throws SQLException {
+        String countSql = """
+            SELECT COALESCE(SUM(
+                       GREATEST((SELECT COUNT(*) FROM ResponseMetadata rm WHERE rm.ResponseID = r.ResponseID), 1) *
+                       GREATEST((SELECT COUNT(*) FROM EvaluationData e WHERE e.ResponseID = r.ResponseID), 1)), 0)
+            FROM Responses r
+            WHERE r.TemplateID = ? AND r.IsDeleted = 0
+        """;
+        try (PreparedStatement pstmt = conn.prepareStatement(countSql)) {
+            pstmt.setInt(1, templateId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    private static MemoryBudget.Reservation reserveExportMemory(long exportRows) {
+        try {
+            return MemoryBudget.tryReserve(MemoryBudget.estimateExportBytes(exportRows), BUDGET_WAIT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
     private void sendJsonError(HttpServletResponse response, int status, String message) throws IOException {
         response.setContentType("application/json");
         response.setStatus(status);
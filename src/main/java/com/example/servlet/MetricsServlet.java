@@ -0,0 +1,98 @@
+package com.example.servlet;
+
+import com.example.processor.IngestionMetrics;
+import com.example.upload.UploadJobManager;
+import com.example.util.ConnectionPool;
+import com.example.util.DatabaseConnection;
+import com.example.util.MemoryBudget;
+import com.example.util.ResponsePurger;
+import org.json.JSONObject;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.io.IOException;
+
+// Point-in-time view of the heap budget, the connection pool, the upload workers, the response purger and the ingestion counters
+@WebServlet("/metrics")
+public class MetricsServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        HttpSession session = request.getSession(false);
+        if (session == null || session.getAttribute("userId") == null) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Please log in");
+            return;
+        }
+
+        response.setCharacterEncoding("UTF-8");
+        response.setContentType("application/json; charset=UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+
+        JSONObject memoryBudget = new JSONObject();
+        memoryBudget.put("budgetBytes", MemoryBudget.budgetBytes());
+        memoryBudget.put("reservedBytes", MemoryBudget.reservedBytes());
+        memoryBudget.put("availableBytes", MemoryBudget.availableBytes());
+        memoryBudget.put("activeReservations", MemoryBudget.activeReservations());
+        memoryBudget.put("waitingRequests", MemoryBudget.waitingCount());
+        memoryBudget.put("admittedTotal", MemoryBudget.admittedCount());
+        memoryBudget.put("rejectedTotal", MemoryBudget.rejectedCount());
+
+        Runtime runtime = Runtime.getRuntime();
+        JSONObject heap = new JSONObject();
+        heap.put("maxBytes", runtime.maxMemory());
+        heap.put("usedBytes", runtime.totalMemory() - runtime.freeMemory());
+
+        JSONObject uploads = new JSONObject();
+        uploads.put("queuedFiles", UploadJobManager.queuedFiles());
+        uploads.put("runningFiles", UploadJobManager.runningFiles());
+
+        JSONObject connectionPool = new JSONObject();
+        ConnectionPool pool = DatabaseConnection.getPoolIfStarted();
+        if (pool != null) {
+            connectionPool.put("active", pool.activeConnections());
+            connectionPool.put("idle", pool.idleConnections());
+            connectionPool.put("total", pool.totalConnections());
+            connectionPool.put("maxSize", pool.maxSize());
+            connectionPool.put("waitingThreads", pool.waitingThreads());
+            connectionPool.put("borrowedTotal", pool.borrowCount());
+            connectionPool.put("waitMillisTotal", pool.totalWaitMillis());
+            connectionPool.put("timeoutsTotal", pool.timeoutCount());
+            connectionPool.put("createdTotal", pool.createdCount());
+            connectionPool.put("validationFailuresTotal", pool.validationFailureCount());
+            connectionPool.put("leaksDetectedTotal", pool.leaksDetected());
+        }
+
+        JSONObject purge = new JSONObject();
+        purge.put("runsTotal", ResponsePurger.runs());
+        purge.put("purgedResponsesTotal", ResponsePurger.purgedResponses());
+        purge.put("purgedRowsTotal", ResponsePurger.purgedRows());
+        purge.put("purgedTemplatesTotal", ResponsePurger.purgedTemplates());
+        purge.put("backOffsTotal", ResponsePurger.backOffs());
+
+        JSONObject ingestion = new JSONObject();
+        ingestion.put("formulaCellsFromCache", IngestionMetrics.formulaCellsFromCache());
+        ingestion.put("formulaCellsEvaluated", IngestionMetrics.formulaCellsEvaluated());
+        ingestion.put("formulaCellsWithoutValue", IngestionMetrics.formulaCellsWithoutValue());
+        ingestion.put("workbooksLoadedForFormulas", IngestionMetrics.workbooksLoadedForFormulas());
+        ingestion.put("rowsInserted", IngestionMetrics.rowsInserted());
+        ingestion.put("insertChunks", IngestionMetrics.insertChunks());
+        ingestion.put("insertMillis", IngestionMetrics.insertMillis());
+        ingestion.put("rowsLoaded", IngestionMetrics.rowsLoaded());
+        ingestion.put("loadDataChunks", IngestionMetrics.loadDataChunks());
+        ingestion.put("loadDataMillis", IngestionMetrics.loadDataMillis());
+
+        JSONObject jsonResponse = new JSONObject();
+        jsonResponse.put("status", "success");
+        jsonResponse.put("memoryBudget", memoryBudget);
+        jsonResponse.put("heap", heap);
+        jsonResponse.put("connectionPool", connectionPool);
+        jsonResponse.put("uploads", uploads);
+        jsonResponse.put("purge", purge);
+        jsonResponse.put("ingestion", ingestion);
+        response.getWriter().write(jsonResponse.toString());
+    }
+}
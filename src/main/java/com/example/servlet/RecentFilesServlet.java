@@ -55,7 +55,7 @@ public class RecentFilesServlet extends HttpServlet {
 
         try (Connection conn = DatabaseConnection.getConnection()) {
             String countSql = "SELECT COUNT(DISTINCT CONCAT(r.OriginalFileName, '_', t.TemplateCategory)) " +
-                              "FROM Responses r JOIN Templates t ON r.TemplateID = t.TemplateID";
+                              "FROM Responses r JOIN TemplateDisplayNames t ON r.TemplateID = t.TemplateID WHERE r.IsDeleted = 0";
             int totalRecords = 0;
             try (PreparedStatement countStmt = conn.prepareStatement(countSql);
                  ResultSet rs = countStmt.executeQuery()) {
@@ -68,7 +68,8 @@ public class RecentFilesServlet extends HttpServlet {
             String sql = """
                 SELECT r.OriginalFileName, t.TemplateCategory, MAX(r.LastUpdated) AS LatestFileUpdate, MAX(r.ResponseID) AS LatestResponseId
                 FROM Responses r
-                JOIN Templates t ON r.TemplateID = t.TemplateID
+                JOIN TemplateDisplayNames t ON r.TemplateID = t.TemplateID
+                WHERE r.IsDeleted = 0
                 GROUP BY r.OriginalFileName, t.TemplateCategory
                 ORDER BY LatestFileUpdate DESC, LatestResponseId DESC -- Sort by most recent update, then by latest response ID for stable ordering
                 LIMIT ? OFFSET ?
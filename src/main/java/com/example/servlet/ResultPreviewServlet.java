@@ -1,6 +1,7 @@
 package com.example.servlet;
 
 import com.example.util.DatabaseConnection;
+import com.example.util.TemplateNames;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
@@ -63,16 +64,7 @@ public class ResultPreviewServlet extends HttpServlet {
         }
 
         try (Connection conn = DatabaseConnection.getConnection()) {
-            String getTemplateIdSql = "SELECT TemplateID FROM Templates WHERE TemplateCategory = ?";
-            int templateId = -1;
-            try (PreparedStatement pstmt = conn.prepareStatement(getTemplateIdSql)) {
-                pstmt.setString(1, templateCategory);
-                try (ResultSet rs = pstmt.executeQuery()) {
-                    if (rs.next()) {
-                        templateId = rs.getInt("TemplateID");
-                    }
-                }
-            }
+            int templateId = TemplateNames.findTemplateId(conn, templateCategory);
 
             if (templateId == -1) {
                 jsonResponse.put("status", "error");
@@ -84,7 +76,7 @@ public class ResultPreviewServlet extends HttpServlet {
             }
 
             JSONArray sheetNames = new JSONArray();
-            String sheetSql = "SELECT SheetName FROM Responses WHERE TemplateID = ? GROUP BY SheetName ORDER BY MIN(ResponseID)";
+            String sheetSql = "SELECT SheetName FROM Responses WHERE TemplateID = ? AND IsDeleted = 0 GROUP BY SheetName ORDER BY MIN(ResponseID)";
             try (PreparedStatement pstmt = conn.prepareStatement(sheetSql)) {
                 pstmt.setInt(1, templateId);
                 try (ResultSet rs = pstmt.executeQuery()) {
@@ -120,7 +112,7 @@ public class ResultPreviewServlet extends HttpServlet {
                 SELECT rm.HeaderKey
                 FROM ResponseMetadata rm
                 JOIN Responses r ON rm.ResponseID = r.ResponseID
-                WHERE r.TemplateID = ? AND r.SheetName = ? AND rm.HeaderValue IS NOT NULL AND rm.HeaderValue != ''
+                WHERE r.TemplateID = ? AND r.SheetName = ? AND r.IsDeleted = 0 AND rm.HeaderValue IS NOT NULL AND rm.HeaderValue != ''
                 GROUP BY rm.HeaderKey
                 ORDER BY MIN(rm.MetadataID)
             """;
@@ -152,7 +144,7 @@ public class ResultPreviewServlet extends HttpServlet {
                 FROM Responses r
                 LEFT JOIN ResponseMetadata rm ON r.ResponseID = rm.ResponseID
                 LEFT JOIN EvaluationData e ON r.ResponseID = e.ResponseID
-                WHERE r.TemplateID = ? AND r.SheetName = ?
+                WHERE r.TemplateID = ? AND r.SheetName = ? AND r.IsDeleted = 0
                 ORDER BY r.IsReuploaded ASC, r.ResponseID ASC, e.DataID -- PRIMARY CHANGE HERE
             """;
             try (PreparedStatement pstmt = conn.prepareStatement(dataSql)) {
@@ -1,6 +1,7 @@
 package com.example.servlet;
 
 import com.example.util.DatabaseConnection;
+import com.example.util.TemplateNames;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -44,17 +45,8 @@ public class TemplateListByCategoryServlet extends HttpServlet {
 
         try (Connection conn = DatabaseConnection.getConnection()) {
             // Step 1: Find the TemplateID for the given TemplateCategory (display name)
-            // Since TemplateCategory is unique due to generateUniqueTemplateDisplayName, this will yield one TemplateID
-            String getTemplateIdSql = "SELECT TemplateID FROM Templates WHERE TemplateCategory = ?";
-            int templateId = -1;
-            try (PreparedStatement pstmt = conn.prepareStatement(getTemplateIdSql)) {
-                pstmt.setString(1, templateCategoryDisplayName);
-                try (ResultSet rs = pstmt.executeQuery()) {
-                    if (rs.next()) {
-                        templateId = rs.getInt("TemplateID");
-                    }
-                }
-            }
+            // "Template Type N" names are computed from each template's ordinal, so this yields one TemplateID
+            int templateId = TemplateNames.findTemplateId(conn, templateCategoryDisplayName);
 
             if (templateId == -1) {
                 // Should not happen if loadTemplateCategories works correctly, but as a safeguard
@@ -68,7 +60,7 @@ public class TemplateListByCategoryServlet extends HttpServlet {
 
             // Step 2: Now, select all individual responses (uploaded files/sheets) that belong to this template ID
             // We need ResponseID and OriginalFileName for display and deletion.
-            String sql = "SELECT ResponseID, OriginalFileName, SheetName FROM Responses WHERE TemplateID = ? ORDER BY OriginalFileName, SheetName";
+            String sql = "SELECT ResponseID, OriginalFileName, SheetName FROM Responses WHERE TemplateID = ? AND IsDeleted = 0 ORDER BY OriginalFileName, SheetName";
             try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
                 pstmt.setInt(1, templateId); // Filter by the found TemplateID
                 try (ResultSet rs = pstmt.executeQuery()) {
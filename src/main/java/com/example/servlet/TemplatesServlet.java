@@ -33,8 +33,9 @@ public class TemplatesServlet extends HttpServlet {
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(
                  "SELECT T.TemplateCategory, MIN(T.TemplateID) AS SampleTemplateID " +
-                 "FROM Templates T " +
+                 "FROM TemplateDisplayNames T " +
                  "JOIN Responses R ON T.TemplateID = R.TemplateID " +
+                 "WHERE R.IsDeleted = 0 " +
                  "GROUP BY T.TemplateCategory " +
                  "ORDER BY T.TemplateCategory"
              )) {
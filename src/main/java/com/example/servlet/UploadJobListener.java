@@ -0,0 +1,44 @@
+package com.example.servlet;
+
+import com.example.upload.UploadJobManager;
+import com.example.util.DatabaseConnection;
+import com.example.util.QueryPlanCheck;
+import com.example.util.ResponsePurger;
+import com.example.util.SchemaMigrations;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+// Brings the schema up to date and starts the upload workers and the response purger with the
+// application; stops them (and cleans up spooled files) on undeploy, closing the database
+// connection pool after them
+@WebListener
+public class UploadJobListener implements ServletContextListener {
+    private static final Logger logger = LoggerFactory.getLogger(UploadJobListener.class);
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            SchemaMigrations.migrate(conn);
+            // Throws, failing the deployment, when a hot lookup would scan a whole table
+            QueryPlanCheck.verify(conn);
+        } catch (SQLException e) {
+            // Without a database the pages still load and report the error per request
+            logger.error("Could not migrate the database schema", e);
+        }
+        UploadJobManager.start();
+        ResponsePurger.start();
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        UploadJobManager.shutdown();
+        ResponsePurger.shutdown();
+        DatabaseConnection.shutdown();
+    }
+}
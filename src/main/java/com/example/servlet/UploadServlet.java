@@ -1,16 +1,24 @@
 package com.example.servlet;
 
-import com.example.processor.ExcelProcessor;
-import com.example.util.DatabaseConnection;
+import com.example.processor.IngestionOptions;
+import com.example.upload.UploadJob;
+import com.example.upload.UploadJobManager;
 import javax.servlet.*;
 import javax.servlet.annotation.MultipartConfig;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.*;
 import java.io.*;
-import java.sql.Connection;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Collection;
-import java.util.List;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -21,6 +29,11 @@ import org.slf4j.LoggerFactory;
 public class UploadServlet extends HttpServlet {
     private static final Logger logger = LoggerFactory.getLogger(UploadServlet.class);
 
+    // Limits for one .zip part, so a small archive cannot expand into an unbounded amount of disk and work
+    private static final int ZIP_MAX_ENTRIES = Integer.getInteger("upload.zip.maxEntries", 1_000);
+    private static final long ZIP_MAX_ENTRY_BYTES = Long.getLong("upload.zip.maxEntryBytes", 200L * 1024 * 1024);
+    private static final long ZIP_MAX_TOTAL_BYTES = Long.getLong("upload.zip.maxTotalBytes", 1024L * 1024 * 1024);
+
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
     	
     	 HttpSession session = request.getSession(false);
@@ -32,56 +45,142 @@ public class UploadServlet extends HttpServlet {
     	request.setCharacterEncoding("UTF-8");
         response.setContentType("application/json; charset=UTF-8");
         JSONObject jsonResponse = new JSONObject();
-        
-        // --- MODIFIED: To store structured info for the modal ---
-        List<JSONObject> uploadedFilesInfo = new ArrayList<>();
-        int uploadedFilesCount = 0;
 
+        // Uploads are read sheet by sheet so large workbooks don't have to fit in the heap as a DOM
+        IngestionOptions options = new IngestionOptions();
+        options.streaming = true;
+        options.parallelism = Runtime.getRuntime().availableProcessors();
+        options.diffReuploads = true;
+        options.workbookTransaction = true;
+        options.reuseParsePlans = true;
+
+        // Each file is queued as soon as it is spooled, so the first files are being parsed while
+        // later parts are still being copied; the browser polls /uploadStatus for the results
+        UploadJob job = UploadJobManager.createJob((Integer) session.getAttribute("userId"));
+        int acceptedFilesCount = 0;
+        int rejectedFilesCount = 0;
+        // Parts and archive entries turned away before they were queued; the job lists them as failed
+        int skippedFilesCount = 0;
 
         try {
+            // Optional sheet selection, one includeSheets / excludeSheets field per sheet name
+            options.includeSheets = sheetNameParameter(request, "includeSheets");
+            options.excludeSheets = sheetNameParameter(request, "excludeSheets");
+
             Collection<Part> parts = request.getParts();
-            boolean anyFileProcessed = false;
 
             for (Part filePart : parts) {
                 if ("files".equals(filePart.getName())) { // Ensure it's the file input part
                     String fileName = filePart.getSubmittedFileName();
                     if (fileName != null && !fileName.isEmpty() && filePart.getContentType() != null) {
 
+                        if (fileName.toLowerCase().endsWith(".zip")) {
+                            // Each workbook in the archive becomes a file of the job with its own result. The
+                            // container has already stored the part (@MultipartConfig); the entries are read from
+                            // that copy one at a time and each is spooled to its own temp file.
+                            try (ZipInputStream zip = new ZipInputStream(filePart.getInputStream(), StandardCharsets.UTF_8)) {
+                                ArchiveLimitStream limited = new ArchiveLimitStream(zip);
+                                Set<String> entryFileNames = new HashSet<>();
+                                int entryCount = 0;
+                                ZipEntry entry;
+                                while ((entry = zip.getNextEntry()) != null) {
+                                    if (++entryCount > ZIP_MAX_ENTRIES) {
+                                        UploadJobManager.rejectFile(job, fileName,
+                                                "The archive has more than " + ZIP_MAX_ENTRIES + " entries; the remaining entries were skipped.");
+                                        skippedFilesCount++;
+                                        break;
+                                    }
+                                    String entryName = entry.getName();
+                                    if (entry.isDirectory() || !isWorkbookEntry(entryName)) {
+                                        continue;
+                                    }
+                                    // Stored under the workbook's own name, as if it had been uploaded on its own, so a
+                                    // later upload of the same workbook is recognized as a re-upload
+                                    String entryFileName = entryName.substring(entryName.lastIndexOf('/') + 1);
+                                    if (!entryFileNames.add(entryFileName)) {
+                                        logger.warn("Skipping archive entry {}: another entry of {} has the same file name", entryName, fileName);
+                                        continue;
+                                    }
+                                    limited.startEntry();
+                                    Boolean accepted;
+                                    try {
+                                        accepted = spoolAndSubmit(job, entryFileName, limited, options);
+                                    } catch (ArchiveLimitException e) {
+                                        // Only this entry is dropped while the archive as a whole is within its limit
+                                        UploadJobManager.rejectFile(job, entryFileName, e.getMessage());
+                                        skippedFilesCount++;
+                                        if (e.wholeArchive) {
+                                            break;
+                                        }
+                                        try {
+                                            limited.skipEntry();
+                                        } catch (ArchiveLimitException skipped) {
+                                            UploadJobManager.rejectFile(job, fileName, skipped.getMessage());
+                                            skippedFilesCount++;
+                                            break;
+                                        }
+                                        continue;
+                                    }
+                                    if (accepted == null) {
+                                        continue;
+                                    }
+                                    if (accepted) {
+                                        acceptedFilesCount++;
+                                    } else {
+                                        rejectedFilesCount++;
+                                    }
+                                }
+                            } catch (IOException e) {
+                                // Entries read before the damaged part are already queued
+                                logger.error("Failed to read archive: " + fileName, e);
+                                UploadJobManager.rejectFile(job, fileName, "The archive could not be read completely.");
+                                skippedFilesCount++;
+                            }
+                            continue;
+                        }
+
                         if (!fileName.toLowerCase().endsWith(".xlsx")) {
                             logger.warn("Skipping non-.xlsx file: {}", fileName);
                             continue;
                         }
 
-                        try (Connection conn = DatabaseConnection.getConnection();
-                             InputStream fileContent = filePart.getInputStream()) {
-                            
-                            ExcelProcessor.TemplateCreationResult result = ExcelProcessor.processExcelFile(conn, fileContent, fileName);
-                            
-                            // --- MODIFIED: Store filename and category for the modal ---
-                            JSONObject fileInfo = new JSONObject();
-                            fileInfo.put("fileName", fileName);
-                            fileInfo.put("templateCategory", result.templateCategoryDisplayName);
-                            uploadedFilesInfo.add(fileInfo);
-
-                            uploadedFilesCount++;
-                            anyFileProcessed = true;
-
-                        } catch (Exception e) {
-                            logger.error("Failed to process file: " + fileName, e);
+                        Boolean accepted;
+                        try (InputStream fileContent = filePart.getInputStream()) {
+                            accepted = spoolAndSubmit(job, fileName, fileContent, options);
+                        }
+                        if (accepted == null) {
+                            continue;
+                        }
+                        if (accepted) {
+                            acceptedFilesCount++;
+                        } else {
+                            rejectedFilesCount++;
                         }
                     }
                 }
             }
 
-            if (anyFileProcessed) {
-                jsonResponse.put("status", "success");
-                jsonResponse.put("uploadedFilesCount", uploadedFilesCount);
-                // --- MODIFIED: Send the structured info ---
-                jsonResponse.put("uploadedFilesInfo", new JSONArray(uploadedFilesInfo)); 
-                response.setStatus(HttpServletResponse.SC_OK);
+            if (acceptedFilesCount > 0) {
+                UploadJobManager.finishSubmitting(job);
+                jsonResponse.put("status", "accepted");
+                jsonResponse.put("jobId", job.getId());
+                jsonResponse.put("filesCount", acceptedFilesCount + rejectedFilesCount + skippedFilesCount);
+                response.setStatus(HttpServletResponse.SC_ACCEPTED);
+            } else if (rejectedFilesCount > 0) {
+                UploadJobManager.discard(job);
+                jsonResponse.put("status", "error");
+                jsonResponse.put("message", "The server is busy processing other uploads. Please try again shortly.");
+                response.setHeader("Retry-After", "30");
+                response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            } else if (skippedFilesCount > 0) {
+                UploadJobManager.discard(job);
+                jsonResponse.put("status", "error");
+                jsonResponse.put("message", "No workbook could be read from the upload: " + failedFileErrors(job));
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             } else {
+                UploadJobManager.discard(job);
                 jsonResponse.put("status", "error");
-                jsonResponse.put("message", "No valid .xlsx files were uploaded or found in the request.");
+                jsonResponse.put("message", "No valid .xlsx files were uploaded or found in the request or its .zip archives.");
                 response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             }
 
@@ -89,9 +188,147 @@ public class UploadServlet extends HttpServlet {
             logger.error("Failed to handle upload", e);
             jsonResponse.put("status", "error");
             jsonResponse.put("message", "Upload failed: " + e.getMessage());
+            if (acceptedFilesCount > 0) {
+                // Files already queued keep running; the client polls /uploadStatus for them
+                UploadJobManager.finishSubmitting(job);
+                jsonResponse.put("jobId", job.getId());
+            } else {
+                UploadJobManager.discard(job);
+            }
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
         }
 
         response.getWriter().write(jsonResponse.toString());
     }
+
+    /**
+     * Copies one workbook to a temp file and queues it on {@code job}. Returns null if the copy
+     * failed, otherwise whether the upload workers accepted the file. {@code content} is not closed,
+     * so it can be the current entry of an archive.
+     */
+    private static Boolean spoolAndSubmit(UploadJob job, String fileName, InputStream content, IngestionOptions options) throws IOException {
+        Path spooledFile = Files.createTempFile("upload-", ".xlsx");
+        try {
+            Files.copy(content, spooledFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (ArchiveLimitException e) {
+            Files.deleteIfExists(spooledFile);
+            throw e;
+        } catch (IOException e) {
+            Files.deleteIfExists(spooledFile);
+            logger.error("Failed to receive file: " + fileName, e);
+            return null;
+        }
+        return UploadJobManager.submitFile(job, fileName, spooledFile, options);
+    }
+
+    // .xlsx entries, leaving out Excel lock files and the metadata folder macOS adds to archives
+    private static boolean isWorkbookEntry(String entryName) {
+        String baseName = entryName.substring(entryName.lastIndexOf('/') + 1);
+        if (!baseName.toLowerCase().endsWith(".xlsx") || baseName.startsWith("~$") || entryName.startsWith("__MACOSX/")) {
+            logger.warn("Skipping archive entry: {}", entryName);
+            return false;
+        }
+        return true;
+    }
+
+    // The message of each rejected file of a job, for an upload none of whose files were queued
+    private static String failedFileErrors(UploadJob job) {
+        JSONArray files = job.toJson().getJSONArray("files");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < files.length(); i++) {
+            JSONObject file = files.getJSONObject(i);
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(file.getString("fileName")).append(": ").append(file.optString("error"));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The current archive entry, failing once it exceeds {@link #ZIP_MAX_ENTRY_BYTES} or the
+     * archive's entries together exceed {@link #ZIP_MAX_TOTAL_BYTES}. Does not close the archive.
+     */
+    private static class ArchiveLimitStream extends FilterInputStream {
+        private long totalRemaining = ZIP_MAX_TOTAL_BYTES;
+        private long entryRemaining;
+
+        ArchiveLimitStream(InputStream archive) {
+            super(archive);
+        }
+
+        void startEntry() {
+            entryRemaining = ZIP_MAX_ENTRY_BYTES;
+        }
+
+        // Reads past the rest of an oversized entry; the bytes still count towards the archive's limit
+        void skipEntry() throws IOException {
+            entryRemaining = Long.MAX_VALUE;
+            byte[] buffer = new byte[8192];
+            while (read(buffer, 0, buffer.length) != -1) {
+                // discard
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long remaining = Math.min(entryRemaining, totalRemaining);
+            if (remaining <= 0) {
+                if (in.read() == -1) {
+                    return -1;
+                }
+                if (totalRemaining <= 0) {
+                    throw new ArchiveLimitException("The archive is larger than " + ZIP_MAX_TOTAL_BYTES
+                            + " bytes when extracted; the remaining entries were skipped.", true);
+                }
+                throw new ArchiveLimitException("The file is larger than " + ZIP_MAX_ENTRY_BYTES
+                        + " bytes when extracted.", false);
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                entryRemaining -= n;
+                totalRemaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            return Math.max(0, read(new byte[(int) Math.min(n, 8192)]));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // An archive entry over its own limit, or, with wholeArchive, the archive over its total limit
+    private static class ArchiveLimitException extends IOException {
+        final boolean wholeArchive;
+
+        ArchiveLimitException(String message, boolean wholeArchive) {
+            super(message);
+            this.wholeArchive = wholeArchive;
+        }
+    }
+
+    private static Set<String> sheetNameParameter(HttpServletRequest request, String name) {
+        String[] values = request.getParameterValues(name);
+        if (values == null) {
+            return null;
+        }
+        Set<String> sheetNames = new LinkedHashSet<>();
+        for (String value : values) {
+            if (!value.trim().isEmpty()) {
+                sheetNames.add(value.trim());
+            }
+        }
+        return sheetNames.isEmpty() ? null : Collections.unmodifiableSet(sheetNames);
+    }
 }
\ No newline at end of file
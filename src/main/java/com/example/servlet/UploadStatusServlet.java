@@ -0,0 +1,44 @@
+package com.example.servlet;
+
+import com.example.upload.UploadJob;
+import com.example.upload.UploadJobManager;
+import org.json.JSONObject;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.io.IOException;
+
+@WebServlet("/uploadStatus")
+public class UploadStatusServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        HttpSession session = request.getSession(false);
+        if (session == null || session.getAttribute("userId") == null) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Please log in");
+            return;
+        }
+
+        response.setCharacterEncoding("UTF-8");
+        response.setContentType("application/json; charset=UTF-8");
+        JSONObject jsonResponse;
+
+        UploadJob job = UploadJobManager.getJob(request.getParameter("jobId"));
+        // Jobs are only visible to the user who uploaded them
+        if (job == null || job.getOwnerId() != (Integer) session.getAttribute("userId")) {
+            jsonResponse = new JSONObject();
+            jsonResponse.put("status", "error");
+            jsonResponse.put("message", "Upload job not found or expired.");
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+        } else {
+            jsonResponse = job.toJson();
+            jsonResponse.put("status", "success");
+        }
+
+        response.getWriter().write(jsonResponse.toString());
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.upload;
+
+import com.example.processor.IngestionProgress;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * One POST to /upload: the files it carried, spooled to disk, and how far each of them got.
+ * Updated by the worker thread and read by /uploadStatus, so all state is guarded by the job.
+ */
+public class UploadJob {
+
+    public enum State { QUEUED, RUNNING, DONE }
+
+    private final String id = UUID.randomUUID().toString();
+    private final int ownerId;
+    private final List<FileProgress> files = new ArrayList<>();
+    private State state = State.QUEUED;
+    private long finishedAt;
+    // Files handed to the workers that have not finished yet
+    private int outstandingFiles;
+    // Set once the request has spooled all of its parts; no files are added after that
+    private boolean sealed;
+
+    UploadJob(int ownerId) {
+        this.ownerId = ownerId;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getOwnerId() {
+        return ownerId;
+    }
+
+    synchronized FileProgress addFile(String fileName, Path spooledFile) {
+        FileProgress file = new FileProgress(fileName, spooledFile);
+        files.add(file);
+        outstandingFiles++;
+        return file;
+    }
+
+    // A file that was turned away before it was spooled, such as an oversized archive entry
+    synchronized void addRejectedFile(String fileName, String error) {
+        FileProgress file = new FileProgress(fileName, null);
+        file.error = error;
+        file.state = FileState.FAILED;
+        files.add(file);
+    }
+
+    synchronized List<FileProgress> getFiles() {
+        return Collections.unmodifiableList(new ArrayList<>(files));
+    }
+
+    synchronized void seal() {
+        sealed = true;
+        finishIfComplete();
+    }
+
+    synchronized void fileStarted() {
+        if (state == State.QUEUED) {
+            state = State.RUNNING;
+        }
+    }
+
+    synchronized void fileFinished() {
+        outstandingFiles--;
+        finishIfComplete();
+    }
+
+    private void finishIfComplete() {
+        if (sealed && outstandingFiles == 0 && state != State.DONE) {
+            state = State.DONE;
+            finishedAt = System.currentTimeMillis();
+        }
+    }
+
+    synchronized boolean isFinishedBefore(long time) {
+        return state == State.DONE && finishedAt < time;
+    }
+
+    public synchronized JSONObject toJson() {
+        JSONArray fileArray = new JSONArray();
+        JSONArray uploadedFilesInfo = new JSONArray();
+        int failedFilesCount = 0;
+        int unchangedFilesCount = 0;
+        for (FileProgress file : files) {
+            fileArray.put(file.toJson());
+            if (file.state == FileState.DONE) {
+                JSONObject fileInfo = new JSONObject();
+                fileInfo.put("fileName", file.fileName);
+                fileInfo.put("templateCategory", file.templateCategory);
+                fileInfo.put("unchanged", file.unchanged);
+                uploadedFilesInfo.put(fileInfo);
+                if (file.unchanged) {
+                    unchangedFilesCount++;
+                }
+            } else if (file.state == FileState.FAILED) {
+                failedFilesCount++;
+            }
+        }
+
+        JSONObject json = new JSONObject();
+        json.put("jobId", id);
+        json.put("state", state.name().toLowerCase());
+        json.put("files", fileArray);
+        // Same fields the synchronous upload used to return, filled in as files finish
+        json.put("uploadedFilesCount", uploadedFilesInfo.length());
+        json.put("uploadedFilesInfo", uploadedFilesInfo);
+        json.put("failedFilesCount", failedFilesCount);
+        json.put("unchangedFilesCount", unchangedFilesCount);
+        return json;
+    }
+
+    enum FileState { QUEUED, PROCESSING, DONE, FAILED }
+
+    /**
+     * Progress of one file. Receives the processor's callbacks; its fields are guarded by the
+     * enclosing job so a status request always sees a consistent snapshot.
+     */
+    class FileProgress implements IngestionProgress {
+        final String fileName;
+        final Path spooledFile;
+        private FileState state = FileState.QUEUED;
+        private String templateCategory;
+        private boolean unchanged;
+        private String error;
+        private int sheetsTotal;
+        private int rowsPersisted;
+        private final JSONArray sheets = new JSONArray();
+
+        FileProgress(String fileName, Path spooledFile) {
+            this.fileName = fileName;
+            this.spooledFile = spooledFile;
+        }
+
+        void started() {
+            synchronized (UploadJob.this) {
+                state = FileState.PROCESSING;
+                fileStarted();
+            }
+        }
+
+        void succeeded(String templateCategory, boolean unchanged) {
+            synchronized (UploadJob.this) {
+                this.templateCategory = templateCategory;
+                this.unchanged = unchanged;
+                state = FileState.DONE;
+            }
+        }
+
+        void failed(String error) {
+            synchronized (UploadJob.this) {
+                this.error = error;
+                state = FileState.FAILED;
+            }
+        }
+
+        @Override
+        public void sheetsFound(int sheetCount) {
+            synchronized (UploadJob.this) {
+                sheetsTotal = sheetCount;
+            }
+        }
+
+        @Override
+        public void sheetStored(String sheetName, int metadataRows, int evaluationRows) {
+            synchronized (UploadJob.this) {
+                JSONObject sheet = new JSONObject();
+                sheet.put("sheetName", sheetName);
+                sheet.put("metadataRows", metadataRows);
+                sheet.put("evaluationRows", evaluationRows);
+                sheets.put(sheet);
+                rowsPersisted += metadataRows + evaluationRows;
+            }
+        }
+
+        private JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            json.put("fileName", fileName);
+            json.put("state", state.name().toLowerCase());
+            json.put("sheetsTotal", sheetsTotal);
+            json.put("sheetsStored", sheets.length());
+            json.put("rowsPersisted", rowsPersisted);
+            json.put("unchanged", unchanged);
+            json.put("sheets", new JSONArray(sheets.toList()));
+            if (templateCategory != null) {
+                json.put("templateCategory", templateCategory);
+            }
+            if (error != null) {
+                json.put("error", error);
+            }
+            return json;
+        }
+    }
+}
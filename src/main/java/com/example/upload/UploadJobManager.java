@@ -0,0 +1,218 @@
+package com.example.upload;
+
+import com.example.processor.ExcelProcessor;
+import com.example.processor.IngestionOptions;
+import com.example.util.DatabaseConnection;
+import com.example.util.MemoryBudget;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs uploaded files off the request thread. Each file is its own task on a fixed set of
+ * workers, so the files of one upload are processed side by side, each on its own connection;
+ * when the queue is full further files are rejected rather than piling up spooled copies.
+ * Started and stopped with the web application by {@code UploadJobListener}.
+ */
+public final class UploadJobManager {
+    private static final Logger logger = LoggerFactory.getLogger(UploadJobManager.class);
+
+    private static final int WORKER_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+    private static final int QUEUE_CAPACITY = 200;
+    // Finished jobs stay visible to /uploadStatus for this long
+    private static final long RETENTION_MS = TimeUnit.HOURS.toMillis(1);
+    // How long a worker waits for heap budget before giving up on a file
+    private static final long MEMORY_WAIT_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final String BUSY_MESSAGE = "The server is busy processing other uploads. Please try again shortly.";
+
+    private static final Map<String, UploadJob> jobs = new ConcurrentHashMap<>();
+    private static ThreadPoolExecutor workers;
+
+    private UploadJobManager() {
+    }
+
+    public static synchronized void start() {
+        if (workers != null) {
+            return;
+        }
+        AtomicInteger counter = new AtomicInteger();
+        workers = new ThreadPoolExecutor(WORKER_THREADS, WORKER_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+                    Thread t = new Thread(r, "upload-worker-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    public static synchronized void shutdown() {
+        if (workers == null) {
+            return;
+        }
+        workers.shutdownNow();
+        try {
+            if (!workers.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warn("Upload workers did not stop within 30 seconds");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers = null;
+        for (UploadJob job : jobs.values()) {
+            deleteSpooledFiles(job);
+        }
+        jobs.clear();
+    }
+
+    public static UploadJob createJob(int ownerId) {
+        evictFinishedJobs();
+        UploadJob job = new UploadJob(ownerId);
+        jobs.put(job.getId(), job);
+        return job;
+    }
+
+    /**
+     * Queues one spooled file of {@code job}; it may start before the request has spooled the
+     * rest of its parts. Returns false if the workers are saturated or stopping, or the heap budget
+     * is used up, in which case the file is recorded as failed and its spooled copy is deleted.
+     */
+    public static boolean submitFile(UploadJob job, String fileName, Path spooledFile, IngestionOptions options) {
+        UploadJob.FileProgress file = job.addFile(fileName, spooledFile);
+        ThreadPoolExecutor executor;
+        synchronized (UploadJobManager.class) {
+            executor = workers;
+        }
+        try {
+            if (executor == null) {
+                throw new RejectedExecutionException("Upload workers are not running");
+            }
+            // Queued files only wait for budget once a worker picks them up; this turns new files
+            // away while the running ones already hold all of it
+            if (!MemoryBudget.admits(estimateMemory(spooledFile, options))) {
+                throw new RejectedExecutionException("Heap budget is used up");
+            }
+            executor.execute(() -> runFile(job, file, options));
+            return true;
+        } catch (RejectedExecutionException e) {
+            logger.warn("Rejecting file {}: {}", fileName, e.getMessage());
+            file.failed(BUSY_MESSAGE);
+            deleteSpooledFile(spooledFile);
+            job.fileFinished();
+            return false;
+        }
+    }
+
+    /**
+     * Records a file of {@code job} that is not processed at all, so /uploadStatus lists it as
+     * failed with {@code reason} next to the files that were queued.
+     */
+    public static void rejectFile(UploadJob job, String fileName, String reason) {
+        logger.warn("Rejecting file {}: {}", fileName, reason);
+        job.addRejectedFile(fileName, reason);
+    }
+
+    // Called once the request has handed over all of its files
+    public static void finishSubmitting(UploadJob job) {
+        job.seal();
+    }
+
+    // Drops a job none of whose files were accepted, so it is not reported by /uploadStatus
+    public static void discard(UploadJob job) {
+        jobs.remove(job.getId());
+        deleteSpooledFiles(job);
+    }
+
+    public static UploadJob getJob(String jobId) {
+        return jobId != null ? jobs.get(jobId) : null;
+    }
+
+    // Files waiting for a worker
+    public static synchronized int queuedFiles() {
+        return workers != null ? workers.getQueue().size() : 0;
+    }
+
+    // Files a worker is on, including ones still waiting for heap budget
+    public static synchronized int runningFiles() {
+        return workers != null ? workers.getActiveCount() : 0;
+    }
+
+    private static void runFile(UploadJob job, UploadJob.FileProgress file, IngestionOptions options) {
+        MemoryBudget.Reservation reservation = null;
+        try {
+            reservation = MemoryBudget.tryReserve(estimateMemory(file.spooledFile, options), MEMORY_WAIT_MS);
+            if (reservation == null) {
+                logger.warn("No heap budget for file {} after {} ms", file.fileName, MEMORY_WAIT_MS);
+                file.failed(BUSY_MESSAGE);
+                return;
+            }
+            file.started();
+            IngestionOptions fileOptions = new IngestionOptions(options);
+            fileOptions.progress = file;
+            try (Connection conn = DatabaseConnection.getConnection()) {
+                ExcelProcessor.TemplateCreationResult result =
+                        ExcelProcessor.processExcelFile(conn, file.spooledFile, file.fileName, fileOptions);
+                file.succeeded(result.templateCategoryDisplayName, result.unchanged);
+            } catch (Exception e) {
+                logger.error("Failed to process file: " + file.fileName, e);
+                file.failed(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            file.failed("Upload processing was stopped.");
+        } finally {
+            if (reservation != null) {
+                reservation.close();
+            }
+            deleteSpooledFile(file.spooledFile);
+            job.fileFinished();
+        }
+    }
+
+    private static long estimateMemory(Path spooledFile, IngestionOptions options) {
+        long fileSize;
+        try {
+            fileSize = Files.size(spooledFile);
+        } catch (IOException e) {
+            fileSize = 0;
+        }
+        return MemoryBudget.estimateIngestionBytes(fileSize, options.streaming);
+    }
+
+    private static void evictFinishedJobs() {
+        long cutoff = System.currentTimeMillis() - RETENTION_MS;
+        for (Iterator<UploadJob> it = jobs.values().iterator(); it.hasNext(); ) {
+            if (it.next().isFinishedBefore(cutoff)) {
+                it.remove();
+            }
+        }
+    }
+
+    private static void deleteSpooledFiles(UploadJob job) {
+        List<UploadJob.FileProgress> files = job.getFiles();
+        for (UploadJob.FileProgress file : files) {
+            if (file.spooledFile != null) {
+                deleteSpooledFile(file.spooledFile);
+            }
+        }
+    }
+
+    private static void deleteSpooledFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Could not delete spooled upload {}", file, e);
+        }
+    }
+}
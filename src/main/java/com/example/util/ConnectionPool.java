@@ -0,0 +1,612 @@
+package com.example.util;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of physical MySQL connections. {@link #borrow()} hands out a proxy whose close()
+ * returns the connection to the pool after rolling back any open transaction, restoring
+ * auto-commit and closing the statements the borrower left open. A connection whose borrower ran
+ * a SET statement (session variables such as innodb_lock_wait_timeout) is closed instead, since
+ * the pool cannot tell what to restore. Idle connections are validated before reuse once they
+ * have sat unused for a while, trimmed back to the minimum after the idle timeout, and a
+ * connection held longer than the leak threshold is logged together with the stack that borrowed it.
+ * Statements of every kind, their result sets and the connection's metadata are wrapped as well,
+ * so that their getConnection() and getStatement() lead back to the proxy and never to the
+ * physical connection. unwrap() on them still reaches the driver's objects.
+ */
+public final class ConnectionPool implements DataSource {
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionPool.class);
+
+    /** Pool sizes and timeouts, all in milliseconds. */
+    public static final class Config {
+        public String url;
+        public String user;
+        public String password;
+        public int minIdle = 2;
+        public int maxSize = 20;
+        // How long borrow() waits for a free connection before failing
+        public long connectionTimeoutMs = 30_000;
+        // Idle connections above minIdle are closed after this long
+        public long idleTimeoutMs = 10 * 60_000;
+        // Connections unused for longer than this are checked with isValid() before being handed out
+        public long validationIntervalMs = 30_000;
+        public int validationTimeoutSeconds = 5;
+        // Borrowed connections held longer than this are reported once; 0 turns detection off
+        public long leakDetectionThresholdMs = 5 * 60_000;
+    }
+
+    private final Config config;
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition returned = lock.newCondition();
+    // Most recently returned first, so the busiest connections stay warm and the rest age out
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final Set<PooledConnection> borrowed = Collections.newSetFromMap(new IdentityHashMap<>());
+    // Physical connections open or being opened
+    private int total;
+    private int waiting;
+    private boolean closed;
+    private final ScheduledExecutorService housekeeper;
+    private volatile PrintWriter logWriter;
+
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong borrowWaitNanos = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong leaksDetected = new AtomicLong();
+
+    public ConnectionPool(Config config) {
+        this.config = config;
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1_000, Math.min(config.idleTimeoutMs, 30_000));
+        housekeeper.scheduleWithFixedDelay(this::houseKeep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public Connection borrow() throws SQLException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(config.connectionTimeoutMs);
+        while (true) {
+            PooledConnection candidate = null;
+            boolean create = false;
+            lock.lock();
+            try {
+                while (true) {
+                    if (closed) {
+                        throw new SQLException("Connection pool is closed");
+                    }
+                    candidate = idle.pollFirst();
+                    if (candidate != null) {
+                        break;
+                    }
+                    if (total < config.maxSize) {
+                        total++;
+                        create = true;
+                        break;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        timeoutCount.incrementAndGet();
+                        throw new SQLTransientConnectionException("No database connection available within "
+                                + config.connectionTimeoutMs + " ms (" + total + " in use)");
+                    }
+                    waiting++;
+                    try {
+                        returned.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a database connection", e);
+                    } finally {
+                        waiting--;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (create) {
+                try {
+                    candidate = new PooledConnection(open());
+                } catch (SQLException e) {
+                    releaseSlot();
+                    throw e;
+                }
+            } else if (!isUsable(candidate)) {
+                validationFailures.incrementAndGet();
+                closeQuietly(candidate.physical);
+                releaseSlot();
+                continue;
+            }
+
+            lock.lock();
+            try {
+                borrowed.add(candidate);
+            } finally {
+                lock.unlock();
+            }
+            candidate.borrowedAt = System.currentTimeMillis();
+            candidate.borrowStack = config.leakDetectionThresholdMs > 0 ? new Exception("Connection borrowed here") : null;
+            candidate.leakReported = false;
+            borrowCount.incrementAndGet();
+            borrowWaitNanos.addAndGet(System.nanoTime() - start);
+            return candidate.newHandle();
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return borrow();
+    }
+
+    // All connections of the pool are opened with the configured user
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Connections are opened with the pool's configured user");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return logWriter;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+        logWriter = out;
+    }
+
+    // The login timeout is how long getConnection() waits for a free connection
+    @Override
+    public void setLoginTimeout(int seconds) {
+        config.connectionTimeoutMs = seconds > 0 ? seconds * 1000L : new Config().connectionTimeoutMs;
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return (int) TimeUnit.MILLISECONDS.toSeconds(config.connectionTimeoutMs);
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException("The pool does not log through java.util.logging");
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("ConnectionPool is not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    public void close() {
+        housekeeper.shutdownNow();
+        List<PooledConnection> toClose;
+        lock.lock();
+        try {
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            idle.clear();
+            total -= toClose.size();
+            returned.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        // Borrowed connections are closed when they come back
+        for (PooledConnection pc : toClose) {
+            closeQuietly(pc.physical);
+        }
+    }
+
+    public int activeConnections() {
+        lock.lock();
+        try {
+            return borrowed.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int idleConnections() {
+        lock.lock();
+        try {
+            return idle.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int totalConnections() {
+        lock.lock();
+        try {
+            return total;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Threads blocked in borrow() right now
+    public int waitingThreads() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int maxSize() {
+        return config.maxSize;
+    }
+
+    public long borrowCount() {
+        return borrowCount.get();
+    }
+
+    // Total time borrowers spent waiting, including opening new connections
+    public long totalWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(borrowWaitNanos.get());
+    }
+
+    public long timeoutCount() {
+        return timeoutCount.get();
+    }
+
+    public long createdCount() {
+        return createdCount.get();
+    }
+
+    public long validationFailureCount() {
+        return validationFailures.get();
+    }
+
+    public long leaksDetected() {
+        return leaksDetected.get();
+    }
+
+    private Connection open() throws SQLException {
+        Connection conn = DriverManager.getConnection(config.url, config.user, config.password);
+        createdCount.incrementAndGet();
+        return conn;
+    }
+
+    private boolean isUsable(PooledConnection pc) {
+        if (System.currentTimeMillis() - pc.lastUsed < config.validationIntervalMs) {
+            return true;
+        }
+        try {
+            return pc.physical.isValid(config.validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    // Called through a handle's close(); puts the connection back unless it is broken or the pool is closed
+    private void giveBack(PooledConnection pc) {
+        boolean reusable = reset(pc);
+        lock.lock();
+        try {
+            borrowed.remove(pc);
+            if (reusable && !closed) {
+                pc.lastUsed = System.currentTimeMillis();
+                idle.addFirst(pc);
+                returned.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        closeQuietly(pc.physical);
+        releaseSlot();
+    }
+
+    // Releases the slot of a physical connection that is gone
+    private void releaseSlot() {
+        lock.lock();
+        try {
+            total--;
+            returned.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Leaves the connection as a fresh one would be; false if that failed
+    private boolean reset(PooledConnection pc) {
+        for (Statement stmt : pc.takeOpenStatements()) {
+            try {
+                stmt.close();
+            } catch (SQLException ignored) {
+            }
+        }
+        try {
+            if (pc.sessionModified || pc.physical.isClosed()) {
+                return false;
+            }
+            if (!pc.physical.getAutoCommit()) {
+                pc.physical.rollback();
+                pc.physical.setAutoCommit(true);
+            }
+            if (pc.physical.isReadOnly()) {
+                pc.physical.setReadOnly(false);
+            }
+            pc.physical.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void houseKeep() {
+        long now = System.currentTimeMillis();
+        List<PooledConnection> expired = new ArrayList<>();
+        List<PooledConnection> leaked = new ArrayList<>();
+        int missing;
+        lock.lock();
+        try {
+            // Oldest at the tail
+            while (idle.size() > config.minIdle && now - idle.peekLast().lastUsed > config.idleTimeoutMs) {
+                expired.add(idle.pollLast());
+                total--;
+            }
+            if (config.leakDetectionThresholdMs > 0) {
+                for (PooledConnection pc : borrowed) {
+                    if (!pc.leakReported && now - pc.borrowedAt > config.leakDetectionThresholdMs) {
+                        pc.leakReported = true;
+                        leaked.add(pc);
+                    }
+                }
+            }
+            missing = closed ? 0 : Math.min(config.minIdle - idle.size(), config.maxSize - total);
+            if (missing > 0) {
+                total += missing;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for (PooledConnection pc : expired) {
+            closeQuietly(pc.physical);
+        }
+        for (PooledConnection pc : leaked) {
+            leaksDetected.incrementAndGet();
+            logger.warn("Possible connection leak: connection held for {} ms", now - pc.borrowedAt, pc.borrowStack);
+        }
+        for (int i = 0; i < missing; i++) {
+            try {
+                PooledConnection pc = new PooledConnection(open());
+                lock.lock();
+                try {
+                    idle.addLast(pc);
+                    returned.signal();
+                } finally {
+                    lock.unlock();
+                }
+            } catch (SQLException e) {
+                releaseSlot();
+                logger.warn("Could not open idle database connection", e);
+            }
+        }
+    }
+
+    private static boolean isClosed(Statement stmt) {
+        try {
+            return stmt.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    // SET statements change session state that reset() cannot restore
+    private static boolean changesSession(Object sql) {
+        if (!(sql instanceof String)) {
+            return false;
+        }
+        String text = (String) sql;
+        int i = 0;
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return text.regionMatches(true, i, "SET", 0, 3) && (text.length() == i + 3 || !Character.isLetterOrDigit(text.charAt(i + 3)));
+    }
+
+    private static Object forward(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void closeQuietly(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private final class PooledConnection {
+        final Connection physical;
+        volatile long lastUsed = System.currentTimeMillis();
+        volatile long borrowedAt;
+        volatile Exception borrowStack;
+        volatile boolean leakReported;
+        // Set once the borrower ran a SET statement; the connection is then closed on return
+        volatile boolean sessionModified;
+        private final List<Statement> openStatements = new ArrayList<>();
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        synchronized void track(Statement stmt) {
+            // Long transactions create many statements; forget the ones the borrower already closed
+            if (openStatements.size() >= 64) {
+                openStatements.removeIf(ConnectionPool::isClosed);
+            }
+            openStatements.add(stmt);
+        }
+
+        synchronized List<Statement> takeOpenStatements() {
+            List<Statement> statements = new ArrayList<>(openStatements);
+            openStatements.clear();
+            return statements;
+        }
+
+        // A new proxy per borrow, so a stale reference kept by a previous borrower cannot reach the connection
+        Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, new Handle(this));
+        }
+    }
+
+    private final class Handle implements InvocationHandler {
+        private PooledConnection pc;
+
+        Handle(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            PooledConnection current;
+            synchronized (this) {
+                current = pc;
+                if ("close".equals(name)) {
+                    pc = null;
+                }
+            }
+            switch (name) {
+                case "close":
+                    if (current != null) {
+                        giveBack(current);
+                    }
+                    return null;
+                case "isClosed":
+                    return current == null || current.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + (current != null ? current.physical : "Connection[closed]");
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(proxy)) {
+                        return proxy;
+                    }
+                    break;
+                case "isWrapperFor":
+                    if (((Class<?>) args[0]).isInstance(proxy)) {
+                        return true;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            if (current == null) {
+                throw new SQLException("Connection is closed");
+            }
+            Object result = forward(current.physical, method, args);
+            if (result instanceof Statement) {
+                current.track((Statement) result);
+                // The SQL of a prepared statement is known now, that of a plain statement only when it runs
+                if (!"createStatement".equals(name) && args != null && changesSession(args[0])) {
+                    current.sessionModified = true;
+                }
+                // Statement, PreparedStatement or CallableStatement, as the method declares
+                return wrap(method.getReturnType(), result, (Connection) proxy, current);
+            } else if (result instanceof DatabaseMetaData) {
+                return wrap(DatabaseMetaData.class, result, (Connection) proxy, current);
+            }
+            return result;
+        }
+
+        // getConnection() of the wrapped object returns the handle instead of the physical connection,
+        // getStatement() of its result sets the wrapped statement instead of the driver's
+        private Object wrap(Class<?> type, Object target, Connection handle, PooledConnection owner) {
+            return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getConnection":
+                        return handle;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "unwrap":
+                    case "isWrapperFor":
+                        if (((Class<?>) args[0]).isInstance(proxy)) {
+                            return "unwrap".equals(method.getName()) ? proxy : true;
+                        }
+                        break;
+                    case "execute":
+                    case "executeQuery":
+                    case "executeUpdate":
+                    case "executeLargeUpdate":
+                    case "addBatch":
+                        if (args != null && changesSession(args[0])) {
+                            owner.sessionModified = true;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+                Object result = forward(target, method, args);
+                if (result instanceof ResultSet && proxy instanceof Statement) {
+                    return wrapResultSet((ResultSet) result, (Statement) proxy);
+                }
+                return result;
+            });
+        }
+
+        private ResultSet wrapResultSet(ResultSet target, Statement statement) {
+            return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class }, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getStatement":
+                        return statement;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return forward(target, method, args);
+                }
+            });
+        }
+    }
+}
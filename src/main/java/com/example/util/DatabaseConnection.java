@@ -1,22 +1,107 @@
 // File: DatabaseConnection.java
 package com.example.util;
 
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * Hands out connections from one application-wide {@link ConnectionPool}; closing a connection
+ * returns it to the pool. Pool sizes and timeouts can be overridden with -Ddb.pool.* system
+ * properties (maxSize, minIdle, connectionTimeoutMs, idleTimeoutMs, validationIntervalMs,
+ * leakDetectionThresholdMs). LOAD DATA LOCAL INFILE may only read files in {@link #LOAD_DATA_DIR}
+ * (-Ddb.loadDataDir), where the bulk insert path spools its rows; spool files left there by a
+ * process that stopped mid-load are deleted when the pool starts.
+ */
 public class DatabaseConnection {
+    private static final Logger logger = LoggerFactory.getLogger(DatabaseConnection.class);
+
     // FIXED: Added characterEncoding=UTF-8 and useUnicode=true to the URL
-    private static final String URL = "jdbc:mysql://localhost:3306/fourth_pj?useUnicode=true&characterEncoding=UTF-8&useSSL=false&serverTimezone=UTC";
+    // cachePrepStmts keeps each pooled connection's parsed statements, so the same SQL is not parsed again on reuse
+    private static final String URL = "jdbc:mysql://localhost:3306/fourth_pj?useUnicode=true&characterEncoding=UTF-8&useSSL=false&serverTimezone=UTC&rewriteBatchedStatements=true"
+            + "&cachePrepStmts=true&prepStmtCacheSize=250&prepStmtCacheSqlLimit=2048&cacheServerConfiguration=true&useLocalSessionState=true";
     private static final String USER = "root"; // Replace with MySQL username
     private static final String PASSWORD = "root"; // Replace with MySQL password
 
+    public static final Path LOAD_DATA_DIR = Paths.get(System.getProperty("db.loadDataDir",
+            System.getProperty("java.io.tmpdir") + "/survey-load-data")).toAbsolutePath();
+
+    private static ConnectionPool pool;
+
     public static Connection getConnection() throws SQLException {
+        return getPool().borrow();
+    }
+
+    public static synchronized ConnectionPool getPool() throws SQLException {
+        if (pool == null) {
+            try {
+                Class.forName("com.mysql.cj.jdbc.Driver");
+            } catch (ClassNotFoundException e) {
+                throw new SQLException("MySQL driver not found: " + e.getMessage(), e);
+            }
+            ConnectionPool.Config config = new ConnectionPool.Config();
+            config.url = URL + loadDataDirParameter();
+            config.user = USER;
+            config.password = PASSWORD;
+            config.maxSize = Integer.getInteger("db.pool.maxSize", config.maxSize);
+            config.minIdle = Math.min(Integer.getInteger("db.pool.minIdle", config.minIdle), config.maxSize);
+            config.connectionTimeoutMs = Long.getLong("db.pool.connectionTimeoutMs", config.connectionTimeoutMs);
+            config.idleTimeoutMs = Long.getLong("db.pool.idleTimeoutMs", config.idleTimeoutMs);
+            config.validationIntervalMs = Long.getLong("db.pool.validationIntervalMs", config.validationIntervalMs);
+            config.leakDetectionThresholdMs = Long.getLong("db.pool.leakDetectionThresholdMs", config.leakDetectionThresholdMs);
+            pool = new ConnectionPool(config);
+        }
+        return pool;
+    }
+
+    // Without the parameter the driver refuses LOAD DATA LOCAL INFILE and the rows are inserted instead
+    private static String loadDataDirParameter() {
         try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            return DriverManager.getConnection(URL, USER, PASSWORD);
-        } catch (ClassNotFoundException e) {
-            throw new SQLException("MySQL driver not found: " + e.getMessage(), e);
+            Path dir = Files.createDirectories(LOAD_DATA_DIR).toRealPath();
+            deleteSpoolFiles(dir);
+            return "&allowLoadLocalInfileInPath=" + URLEncoder.encode(dir.toString(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.warn("LOAD DATA directory {} is not usable: {}", LOAD_DATA_DIR, e.getMessage());
+            return "";
+        }
+    }
+
+    // BulkRowWriter deletes its spool files as it goes; these are from a process that was killed
+    private static void deleteSpoolFiles(Path dir) throws IOException {
+        int deleted = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "rows-*.tsv")) {
+            for (Path file : files) {
+                try {
+                    Files.deleteIfExists(file);
+                    deleted++;
+                } catch (IOException e) {
+                    logger.warn("Could not delete leftover LOAD DATA spool file {}", file, e);
+                }
+            }
+        }
+        if (deleted > 0) {
+            logger.info("Deleted {} leftover LOAD DATA spool file(s) from {}", deleted, dir);
+        }
+    }
+
+    // Pool statistics without creating the pool; null before the first connection was requested
+    public static synchronized ConnectionPool getPoolIfStarted() {
+        return pool;
+    }
+
+    // Closes idle connections; called when the application stops
+    public static synchronized void shutdown() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
         }
     }
-}
\ No newline at end of file
+}
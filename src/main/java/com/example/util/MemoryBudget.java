@@ -0,0 +1,139 @@
+package com.example.util;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide heap budget shared by uploads and exports. Each request reserves its estimated
+ * working set before building a workbook in memory and returns it when done, so a burst of large
+ * requests waits or is turned away instead of running the JVM out of memory. The budget defaults
+ * to half of the maximum heap and can be set in MB with {@code -DmemoryBudgetMb=}.
+ */
+public final class MemoryBudget {
+
+    // Rough heap cost per byte of .xlsx: streaming keeps shared strings and one sheet's cells,
+    // an XSSFWorkbook keeps the whole XML tree
+    private static final int STREAMING_BYTES_PER_FILE_BYTE = 10;
+    private static final int DOM_BYTES_PER_FILE_BYTE = 50;
+    // Export: one buffered row of the export query plus its share of the result maps and XSSF cells
+    private static final int EXPORT_BYTES_PER_ROW = 2048;
+
+    private static final long MIN_RESERVATION_BYTES = 1024 * 1024;
+
+    // Permits are KB so a semaphore's int range covers any heap
+    private static final int BUDGET_KB = budgetKb();
+    private static final Semaphore permits = new Semaphore(BUDGET_KB, true);
+
+    private static final AtomicLong activeReservations = new AtomicLong();
+    private static final AtomicLong admitted = new AtomicLong();
+    private static final AtomicLong rejected = new AtomicLong();
+
+    private MemoryBudget() {
+    }
+
+    /** Held budget; closing it gives the memory back. Closing twice is harmless. */
+    public static final class Reservation implements AutoCloseable {
+        private final int kb;
+        private boolean released;
+
+        private Reservation(int kb) {
+            this.kb = kb;
+        }
+
+        public long bytes() {
+            return kb * 1024L;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!released) {
+                released = true;
+                activeReservations.decrementAndGet();
+                permits.release(kb);
+            }
+        }
+    }
+
+    public static long estimateIngestionBytes(long fileSize, boolean streaming) {
+        return fileSize * (streaming ? STREAMING_BYTES_PER_FILE_BYTE : DOM_BYTES_PER_FILE_BYTE);
+    }
+
+    public static long estimateExportBytes(long storedRows) {
+        return storedRows * EXPORT_BYTES_PER_ROW;
+    }
+
+    /**
+     * Reserves {@code bytes}, waiting up to {@code timeoutMs} for other requests to release theirs.
+     * Returns null if the budget stayed used up. A request larger than the whole budget is cut down
+     * to it, so it can still run, just alone.
+     */
+    public static Reservation tryReserve(long bytes, long timeoutMs) throws InterruptedException {
+        long kb = Math.max(bytes, MIN_RESERVATION_BYTES) / 1024;
+        int wanted = (int) Math.min(kb, BUDGET_KB);
+        if (!permits.tryAcquire(wanted, timeoutMs, TimeUnit.MILLISECONDS)) {
+            rejected.incrementAndGet();
+            return null;
+        }
+        admitted.incrementAndGet();
+        activeReservations.incrementAndGet();
+        return new Reservation(wanted);
+    }
+
+    public static long budgetBytes() {
+        return BUDGET_KB * 1024L;
+    }
+
+    public static long reservedBytes() {
+        return (BUDGET_KB - (long) permits.availablePermits()) * 1024L;
+    }
+
+    public static long availableBytes() {
+        return permits.availablePermits() * 1024L;
+    }
+
+    /**
+     * Admission check for work that reserves later: true if a reservation of this size would be
+     * granted right now without waiting. A false answer is counted as a rejection.
+     */
+    public static boolean admits(long bytes) {
+        long kb = Math.min(Math.max(bytes, MIN_RESERVATION_BYTES) / 1024, BUDGET_KB);
+        if (permits.availablePermits() >= kb && permits.getQueueLength() == 0) {
+            return true;
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    public static long activeReservations() {
+        return activeReservations.get();
+    }
+
+    // Reservations granted since startup
+    public static long admittedCount() {
+        return admitted.get();
+    }
+
+    // Requests turned away for lack of budget since startup
+    public static long rejectedCount() {
+        return rejected.get();
+    }
+
+    // Requests queued on the semaphore right now
+    public static int waitingCount() {
+        return permits.getQueueLength();
+    }
+
+    private static int budgetKb() {
+        long bytes = Runtime.getRuntime().maxMemory() / 2;
+        String configured = System.getProperty("memoryBudgetMb");
+        if (configured != null) {
+            try {
+                bytes = Long.parseLong(configured.trim()) * 1024 * 1024;
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring invalid memoryBudgetMb: " + configured);
+            }
+        }
+        return (int) Math.max(1024, Math.min(bytes / 1024, Integer.MAX_VALUE));
+    }
+}
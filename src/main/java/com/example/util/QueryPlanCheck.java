@@ -0,0 +1,106 @@
+package com.example.util;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs EXPLAIN on the per-request lookups of the survey tables and reports any that would read a
+ * whole table or index instead of seeking by key, which is what a missing or unusable index looks
+ * like. Parameters are replaced by literals of the right type; the plan does not depend on them.
+ * Listings that read everything by design (all templates, recent files) are not checked.
+ */
+public final class QueryPlanCheck {
+    private static final Logger logger = LoggerFactory.getLogger(QueryPlanCheck.class);
+
+    // Set -Dschema.allowFullScans=true to start anyway when a lookup falls back to a scan
+    public static final String ALLOW_FULL_SCANS_PROPERTY = "schema.allowFullScans";
+
+    private static final Map<String, String> HOT_QUERIES = new LinkedHashMap<>();
+    static {
+        HOT_QUERIES.put("re-upload lookup",
+                "SELECT ResponseID FROM Responses WHERE TemplateID = 0 AND OriginalFileName = '' AND SheetName = '' AND IsDeleted = 0");
+        HOT_QUERIES.put("unchanged-upload check", """
+                SELECT t.TemplateID, COUNT(*) FROM Templates t JOIN Responses r ON r.TemplateID = t.TemplateID
+                WHERE t.InternalTemplateCategory = '' AND r.OriginalFileName = '' AND t.IsDeleted = 0 AND r.IsDeleted = 0 GROUP BY t.TemplateID""");
+        HOT_QUERIES.put("template by fingerprint",
+                "SELECT TemplateID FROM Templates WHERE InternalTemplateCategory = '' AND IsDeleted = 0");
+        HOT_QUERIES.put("template by custom name",
+                "SELECT TemplateID FROM Templates WHERE TemplateCategory = '' AND IsDeleted = 0 AND IsAutoNamed = 0");
+        HOT_QUERIES.put("template by auto-name rank",
+                "SELECT TemplateID FROM Templates WHERE IsDeleted = 0 AND IsAutoNamed = 1 ORDER BY DisplayOrdinal LIMIT 1 OFFSET 0");
+        HOT_QUERIES.put("auto-name rank of a template",
+                "SELECT COUNT(*) FROM Templates WHERE IsDeleted = 0 AND IsAutoNamed = 1 AND DisplayOrdinal <= 0");
+        HOT_QUERIES.put("sheets of a template",
+                "SELECT SheetName FROM Responses WHERE TemplateID = 0 AND IsDeleted = 0 GROUP BY SheetName ORDER BY MIN(ResponseID)");
+        HOT_QUERIES.put("responses of a template",
+                "SELECT ResponseID, OriginalFileName, SheetName FROM Responses WHERE TemplateID = 0 AND IsDeleted = 0 ORDER BY OriginalFileName, SheetName");
+        HOT_QUERIES.put("evaluation rows of a response",
+                "SELECT DataID, MainItem, SubItem, Evaluation, Comment FROM EvaluationData WHERE ResponseID = 0 ORDER BY DataID");
+        HOT_QUERIES.put("metadata rows of a response",
+                "SELECT MetadataID, HeaderKey, HeaderValue FROM ResponseMetadata WHERE ResponseID = 0 ORDER BY MetadataID");
+        HOT_QUERIES.put("preview evaluation rows", """
+                SELECT r.ResponseID, e.MainItem, e.SubItem, e.Evaluation, e.Comment
+                FROM Responses r LEFT JOIN EvaluationData e ON r.ResponseID = e.ResponseID
+                WHERE r.TemplateID = 0 AND r.SheetName = '' AND r.IsDeleted = 0 ORDER BY r.IsReuploaded ASC, r.ResponseID ASC, e.DataID""");
+        HOT_QUERIES.put("preview metadata keys", """
+                SELECT rm.HeaderKey FROM ResponseMetadata rm JOIN Responses r ON rm.ResponseID = r.ResponseID
+                WHERE r.TemplateID = 0 AND r.SheetName = '' AND r.IsDeleted = 0 GROUP BY rm.HeaderKey ORDER BY MIN(rm.MetadataID)""");
+        HOT_QUERIES.put("purge queue",
+                "SELECT ResponseID FROM Responses WHERE IsDeleted = 1 ORDER BY ResponseID LIMIT 50");
+        HOT_QUERIES.put("template purge queue",
+                "SELECT TemplateID FROM Templates WHERE IsDeleted = 1 LIMIT 100");
+        HOT_QUERIES.put("login",
+                "SELECT UserID, PasswordHash FROM Users WHERE Username = '' OR Email = ''");
+    }
+
+    private QueryPlanCheck() {
+    }
+
+    /** One line per table a hot query would scan in full; empty when every lookup uses an index. */
+    public static List<String> findFullScans(Connection conn) throws SQLException {
+        List<String> problems = new ArrayList<>();
+        try (Statement stmt = conn.createStatement()) {
+            for (Map.Entry<String, String> query : HOT_QUERIES.entrySet()) {
+                try (ResultSet rs = stmt.executeQuery("EXPLAIN " + query.getValue())) {
+                    while (rs.next()) {
+                        String type = rs.getString("type");
+                        // ALL reads the whole table, index the whole of one index
+                        if ("ALL".equals(type) || "index".equals(type)) {
+                            problems.add(query.getKey() + ": " + type + " scan of " + rs.getString("table")
+                                    + " (possible keys: " + rs.getString("possible_keys") + ")");
+                        }
+                    }
+                }
+            }
+        }
+        return problems;
+    }
+
+    /**
+     * Throws if any hot query would scan a whole table or index, so that a deployment missing an
+     * index fails at startup rather than under load. With {@value #ALLOW_FULL_SCANS_PROPERTY} set
+     * the scans are only logged.
+     */
+    public static void verify(Connection conn) throws SQLException {
+        List<String> problems = findFullScans(conn);
+        if (problems.isEmpty()) {
+            logger.info("Query plan check passed for {} lookups", HOT_QUERIES.size());
+            return;
+        }
+        for (String problem : problems) {
+            logger.warn("Query plan check: {}", problem);
+        }
+        if (!Boolean.getBoolean(ALLOW_FULL_SCANS_PROPERTY)) {
+            throw new IllegalStateException(problems.size() + " hot queries fall back to a full scan (set -D"
+                    + ALLOW_FULL_SCANS_PROPERTY + "=true to start anyway): " + problems);
+        }
+    }
+}
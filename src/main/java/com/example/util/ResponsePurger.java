@@ -0,0 +1,239 @@
+package com.example.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Physically removes responses that /delete has only flagged (Responses.IsDeleted), together
+ * with their evaluation and metadata rows, and then the flagged templates left without responses.
+ * Work is done in small transactions of at most {@link #ROWS_PER_STATEMENT} rows, each run stops
+ * after {@code -Dpurge.timeBoxMs} and the thread sleeps as long as it worked between chunks, so
+ * uploads and previews only ever wait for one short delete. A statement that is still waiting for
+ * a lock after a couple of seconds is cancelled and the chunk is retried on the next run. Started and stopped by {@code UploadJobListener}.
+ */
+public final class ResponsePurger {
+    private static final Logger logger = LoggerFactory.getLogger(ResponsePurger.class);
+
+    private static final long INTERVAL_MS = Long.getLong("purge.intervalMs", 10_000);
+    private static final long TIME_BOX_MS = Long.getLong("purge.timeBoxMs", 1_000);
+    private static final int RESPONSES_PER_CHUNK = 50;
+    private static final int ROWS_PER_STATEMENT = 2_000;
+    private static final int TEMPLATES_PER_RUN = 100;
+    // Seconds a purge statement may run, mostly waiting for row locks held by an upload, before it
+    // is cancelled. A query timeout rather than innodb_lock_wait_timeout, so that the pooled
+    // connection's session is left alone.
+    private static final int STATEMENT_TIMEOUT_SECONDS = 2;
+
+    private static ScheduledThreadPoolExecutor executor;
+    private static final AtomicBoolean wakeUpPending = new AtomicBoolean();
+
+    private static final AtomicLong purgedResponses = new AtomicLong();
+    private static final AtomicLong purgedRows = new AtomicLong();
+    private static final AtomicLong purgedTemplates = new AtomicLong();
+    private static final AtomicLong backOffs = new AtomicLong();
+    private static final AtomicLong runs = new AtomicLong();
+
+    private ResponsePurger() {
+    }
+
+    public static synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "response-purger");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(ResponsePurger::run, INTERVAL_MS, INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized void shutdown() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warn("Response purger did not stop within 10 seconds");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+    }
+
+    // Starts a run now instead of at the next interval, e.g. right after a delete
+    public static synchronized void wakeUp() {
+        if (executor != null && wakeUpPending.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                wakeUpPending.set(false);
+                run();
+            });
+        }
+    }
+
+    public static long purgedResponses() {
+        return purgedResponses.get();
+    }
+
+    public static long purgedRows() {
+        return purgedRows.get();
+    }
+
+    public static long purgedTemplates() {
+        return purgedTemplates.get();
+    }
+
+    // Runs that stopped early because an upload or preview held a lock the purger needed
+    public static long backOffs() {
+        return backOffs.get();
+    }
+
+    public static long runs() {
+        return runs.get();
+    }
+
+    private static void run() {
+        runs.incrementAndGet();
+        long deadline = System.currentTimeMillis() + TIME_BOX_MS;
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                boolean drained = purgeResponses(conn, deadline);
+                if (drained && System.currentTimeMillis() < deadline) {
+                    purgeTemplates(conn);
+                }
+            } catch (SQLTransientException e) {
+                // Statement timeout or deadlock: leave the rest for the next run
+                backOffs.incrementAndGet();
+                rollBack(conn, e);
+                logger.debug("Response purge backed off", e);
+            } catch (SQLException e) {
+                rollBack(conn, e);
+                throw e;
+            }
+        } catch (SQLException e) {
+            logger.warn("Response purge failed (SQLState {}, error {})", e.getSQLState(), e.getErrorCode(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Returns true once no flagged response is left, false if the time box ran out first
+    private static boolean purgeResponses(Connection conn, long deadline) throws SQLException, InterruptedException {
+        while (System.currentTimeMillis() < deadline) {
+            List<Integer> responseIds = new ArrayList<>();
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "SELECT ResponseID FROM Responses WHERE IsDeleted = 1 ORDER BY ResponseID LIMIT " + RESPONSES_PER_CHUNK)) {
+                pstmt.setQueryTimeout(STATEMENT_TIMEOUT_SECONDS);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        responseIds.add(rs.getInt(1));
+                    }
+                }
+            }
+            conn.commit();
+            if (responseIds.isEmpty()) {
+                return true;
+            }
+
+            String in = "(" + String.join(",", Collections.nCopies(responseIds.size(), "?")) + ")";
+            // Child rows go first, a bounded number per transaction; the response rows stay
+            // flagged until then, so an interrupted chunk simply continues on the next run
+            if (!deleteInSlices(conn, "DELETE FROM EvaluationData WHERE ResponseID IN " + in, responseIds, deadline)
+                    || !deleteInSlices(conn, "DELETE FROM ResponseMetadata WHERE ResponseID IN " + in, responseIds, deadline)) {
+                return false;
+            }
+            long started = System.currentTimeMillis();
+            int deleted = execute(conn, "DELETE FROM Responses WHERE IsDeleted = 1 AND ResponseID IN " + in, responseIds);
+            conn.commit();
+            purgedResponses.addAndGet(deleted);
+            pause(System.currentTimeMillis() - started);
+        }
+        return false;
+    }
+
+    private static boolean deleteInSlices(Connection conn, String sql, List<Integer> responseIds, long deadline)
+            throws SQLException, InterruptedException {
+        while (true) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            long started = System.currentTimeMillis();
+            int deleted = execute(conn, sql + " LIMIT " + ROWS_PER_STATEMENT, responseIds);
+            conn.commit();
+            purgedRows.addAndGet(deleted);
+            pause(System.currentTimeMillis() - started);
+            if (deleted < ROWS_PER_STATEMENT) {
+                return true;
+            }
+        }
+    }
+
+    // Flagged templates can only go once their last response has been purged (foreign key). One
+    // that an upload stored a response in while it was being flagged is unflagged instead. At most
+    // TEMPLATES_PER_RUN flagged rows are looked at, found through the IsDeleted prefix of
+    // idx_templates_display_rank, and then changed by primary key.
+    private static void purgeTemplates(Connection conn) throws SQLException {
+        List<Integer> templateIds = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT TemplateID FROM Templates WHERE IsDeleted = 1 LIMIT " + TEMPLATES_PER_RUN)) {
+            pstmt.setQueryTimeout(STATEMENT_TIMEOUT_SECONDS);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    templateIds.add(rs.getInt(1));
+                }
+            }
+        }
+        if (templateIds.isEmpty()) {
+            conn.commit();
+            return;
+        }
+        String in = "(" + String.join(",", Collections.nCopies(templateIds.size(), "?")) + ")";
+        execute(conn, "UPDATE Templates SET IsDeleted = 0 WHERE IsDeleted = 1 AND TemplateID IN " + in +
+                      " AND EXISTS (SELECT 1 FROM Responses r WHERE r.TemplateID = Templates.TemplateID AND r.IsDeleted = 0)", templateIds);
+        int deleted = execute(conn, "DELETE FROM Templates WHERE IsDeleted = 1 AND TemplateID IN " + in +
+                      " AND NOT EXISTS (SELECT 1 FROM Responses r WHERE r.TemplateID = Templates.TemplateID)", templateIds);
+        conn.commit();
+        purgedTemplates.addAndGet(deleted);
+    }
+
+    // A failing rollback is attached to the error that caused it instead of replacing it
+    private static void rollBack(Connection conn, SQLException cause) {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    private static int execute(Connection conn, String sql, List<Integer> ids) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setQueryTimeout(STATEMENT_TIMEOUT_SECONDS);
+            int i = 1;
+            for (Integer id : ids) {
+                pstmt.setInt(i++, id);
+            }
+            return pstmt.executeUpdate();
+        }
+    }
+
+    // Idles as long as the last statement worked, keeping the purger below half of one connection's time
+    private static void pause(long workedMillis) throws InterruptedException {
+        Thread.sleep(Math.max(10, workedMillis));
+    }
+}
@@ -0,0 +1,408 @@
+package com.example.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Versioned schema changes for the survey tables, applied in order at startup. Each migration is
+ * recorded in SchemaVersion once it has run and is never run again, so a new schema change is a
+ * new entry at the end of {@link #MIGRATIONS}, never an edit of an applied one. MySQL commits DDL
+ * immediately, so every migration is written to be safe to re-run should the application stop
+ * between its statements and its SchemaVersion row.
+ */
+public final class SchemaMigrations {
+    private static final Logger logger = LoggerFactory.getLogger(SchemaMigrations.class);
+
+    private interface Step {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    private static final class Migration {
+        final int version;
+        final String description;
+        final Step step;
+
+        Migration(int version, String description, Step step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "Create survey tables", SchemaMigrations::createSurveyTables),
+            new Migration(2, "Add Responses.ContentHash", conn ->
+                    addColumnIfMissing(conn, "Responses", "ContentHash", "CHAR(64) NULL")),
+            new Migration(3, "Create TemplateParsePlans", SchemaMigrations::createTemplateParsePlans),
+            new Migration(4, "Index survey lookups", SchemaMigrations::indexSurveyLookups),
+            new Migration(5, "Add soft-delete flags", SchemaMigrations::addSoftDeleteFlags),
+            new Migration(6, "Compute template display names", SchemaMigrations::addTemplateDisplayOrdinals),
+            new Migration(7, "Allocate template ordinals from a sequence", SchemaMigrations::createTemplateOrdinalSequence),
+            new Migration(8, "Empty the template ordinal sequence", conn -> {
+                // Rows allocated before nextDisplayOrdinal deleted its own; the AUTO_INCREMENT counter stays
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.executeUpdate("DELETE FROM TemplateOrdinalSequence");
+                }
+            })
+    );
+
+    // Held while migrating, so two instances starting together do not run the same DDL
+    private static final String LOCK_NAME = "fourth_pj.schema_migrations";
+    private static final int LOCK_TIMEOUT_SECONDS = 60;
+
+    private SchemaMigrations() {
+    }
+
+    /** Applies the migrations this database has not seen yet; returns how many ran. */
+    public static int migrate(Connection conn) throws SQLException {
+        if (!acquireLock(conn)) {
+            throw new SQLException("Timed out waiting for the schema migration lock");
+        }
+        try {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("""
+                    CREATE TABLE IF NOT EXISTS SchemaVersion (
+                        Version INT NOT NULL PRIMARY KEY,
+                        Description VARCHAR(255) NOT NULL,
+                        AppliedAt DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP
+                    ) DEFAULT CHARSET = utf8mb4
+                """);
+            }
+            int current = currentVersion(conn);
+            int applied = 0;
+            for (Migration migration : MIGRATIONS) {
+                if (migration.version <= current) {
+                    continue;
+                }
+                long start = System.currentTimeMillis();
+                migration.step.apply(conn);
+                try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO SchemaVersion (Version, Description) VALUES (?, ?)")) {
+                    pstmt.setInt(1, migration.version);
+                    pstmt.setString(2, migration.description);
+                    pstmt.executeUpdate();
+                }
+                applied++;
+                logger.info("Applied schema migration {} ({}) in {} ms", migration.version, migration.description,
+                        System.currentTimeMillis() - start);
+            }
+            logger.info("Schema is at version {} ({} migrations applied)", latestVersion(), applied);
+            return applied;
+        } finally {
+            releaseLock(conn);
+        }
+    }
+
+    public static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    private static int currentVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(Version), 0) FROM SchemaVersion")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    // Tables as the application has always used them; existing databases keep their definitions
+    private static void createSurveyTables(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("""
+                CREATE TABLE IF NOT EXISTS Users (
+                    UserID INT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+                    Username VARCHAR(50) NOT NULL UNIQUE,
+                    Email VARCHAR(255) NOT NULL UNIQUE,
+                    PasswordHash VARCHAR(255) NOT NULL
+                ) DEFAULT CHARSET = utf8mb4
+            """);
+            stmt.executeUpdate("""
+                CREATE TABLE IF NOT EXISTS Templates (
+                    TemplateID INT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+                    TemplateName VARCHAR(255),
+                    TemplateCategory VARCHAR(255) NOT NULL,
+                    InternalTemplateCategory TEXT NOT NULL,
+                    UploadDate DATETIME
+                ) DEFAULT CHARSET = utf8mb4
+            """);
+            stmt.executeUpdate("""
+                CREATE TABLE IF NOT EXISTS Responses (
+                    ResponseID INT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+                    TemplateID INT NOT NULL,
+                    SheetName VARCHAR(255) NOT NULL,
+                    OriginalFileName VARCHAR(255) NOT NULL,
+                    LastUpdated DATETIME,
+                    IsReuploaded BOOLEAN NOT NULL DEFAULT FALSE,
+                    FOREIGN KEY (TemplateID) REFERENCES Templates (TemplateID) ON DELETE CASCADE
+                ) DEFAULT CHARSET = utf8mb4
+            """);
+            stmt.executeUpdate("""
+                CREATE TABLE IF NOT EXISTS ResponseMetadata (
+                    MetadataID INT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+                    ResponseID INT NOT NULL,
+                    HeaderKey VARCHAR(255),
+                    HeaderValue TEXT,
+                    FOREIGN KEY (ResponseID) REFERENCES Responses (ResponseID) ON DELETE CASCADE
+                ) DEFAULT CHARSET = utf8mb4
+            """);
+            stmt.executeUpdate("""
+                CREATE TABLE IF NOT EXISTS EvaluationData (
+                    DataID INT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+                    ResponseID INT NOT NULL,
+                    MainItem TEXT,
+                    SubItem TEXT,
+                    Evaluation TEXT,
+                    Comment TEXT,
+                    FOREIGN KEY (ResponseID) REFERENCES Responses (ResponseID) ON DELETE CASCADE
+                ) DEFAULT CHARSET = utf8mb4
+            """);
+        }
+    }
+
+    // Where each template's evaluation table was found (see TemplateParsePlans); plans go away with their template
+    private static void createTemplateParsePlans(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("""
+                CREATE TABLE IF NOT EXISTS TemplateParsePlans (
+                    TemplateID INT NOT NULL,
+                    SheetName VARCHAR(255) NOT NULL,
+                    EvalStartRow INT NOT NULL,
+                    EvalColumn INT NOT NULL,
+                    CommentColumn INT NOT NULL,
+                    HeaderRowText TEXT NOT NULL,
+                    UpdatedAt DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                    PRIMARY KEY (TemplateID, SheetName),
+                    FOREIGN KEY (TemplateID) REFERENCES Templates (TemplateID) ON DELETE CASCADE
+                ) DEFAULT CHARSET = utf8mb4
+            """);
+        }
+    }
+
+    private static void indexSurveyLookups(Connection conn) throws SQLException {
+        // Re-upload lookup by file and sheet, and the unchanged-upload check
+        createIndexIfMissing(conn, "Responses", "idx_responses_template_file_sheet", "TemplateID", "OriginalFileName", "SheetName");
+        // Preview, export and sheet lists of one template, in ResponseID order
+        createIndexIfMissing(conn, "Responses", "idx_responses_template_sheet", "TemplateID", "SheetName", "ResponseID");
+        // Rows of one response in stored order; an index on ResponseID alone (such as the foreign
+        // key's) already provides this, since InnoDB appends the primary key to it
+        createIndexIfMissing(conn, "ResponseMetadata", "idx_metadata_response", "ResponseID", "MetadataID");
+        createIndexIfMissing(conn, "EvaluationData", "idx_evaluation_response", "ResponseID", "DataID");
+        createIndexIfMissing(conn, "Templates", "idx_templates_category", "TemplateCategory");
+        createIndexIfMissing(conn, "Templates", "idx_templates_internal_category", "InternalTemplateCategory");
+        createIndexIfMissing(conn, "Users", "idx_users_username", "Username");
+        createIndexIfMissing(conn, "Users", "idx_users_email", "Email");
+    }
+
+    // Set by /delete and cleared only by removing the row (see ResponsePurger); reads skip flagged rows
+    private static void addSoftDeleteFlags(Connection conn) throws SQLException {
+        addColumnIfMissing(conn, "Responses", "IsDeleted", "BOOLEAN NOT NULL DEFAULT FALSE");
+        addColumnIfMissing(conn, "Templates", "IsDeleted", "BOOLEAN NOT NULL DEFAULT FALSE");
+        // The purger's queue of flagged responses, oldest first
+        createIndexIfMissing(conn, "Responses", "idx_responses_deleted", "IsDeleted", "ResponseID");
+    }
+
+    /**
+     * Replaces the stored "Template Type N" names, which every delete renumbered, with an ordinal
+     * fixed at creation (see TemplateNames). Existing auto-named templates keep their current order.
+     */
+    private static void addTemplateDisplayOrdinals(Connection conn) throws SQLException {
+        addColumnIfMissing(conn, "Templates", "IsAutoNamed", "BOOLEAN NOT NULL DEFAULT FALSE");
+        addColumnIfMissing(conn, "Templates", "DisplayOrdinal", "INT NULL");
+        try (Statement stmt = conn.createStatement()) {
+            boolean numbered;
+            try (ResultSet rs = stmt.executeQuery("SELECT EXISTS (SELECT 1 FROM Templates WHERE DisplayOrdinal IS NOT NULL)")) {
+                numbered = rs.next() && rs.getBoolean(1);
+            }
+            // One statement, so a re-run finds either no ordinals or all of them
+            if (!numbered) {
+                stmt.executeUpdate("""
+                    UPDATE Templates t
+                    JOIN (SELECT TemplateID, ROW_NUMBER() OVER (
+                              ORDER BY CAST(SUBSTRING(TemplateCategory, 15) AS UNSIGNED), TemplateID) AS Ordinal
+                          FROM Templates WHERE TemplateCategory REGEXP '^Template Type [0-9]+$') n
+                      ON n.TemplateID = t.TemplateID
+                    SET t.IsAutoNamed = TRUE, t.DisplayOrdinal = n.Ordinal
+                """);
+            }
+            stmt.executeUpdate("""
+                CREATE OR REPLACE VIEW TemplateDisplayNames AS
+                SELECT TemplateID, TemplateName, UploadDate,
+                       CASE WHEN IsAutoNamed
+                            THEN CONCAT('Template Type ', ROW_NUMBER() OVER (PARTITION BY IsAutoNamed ORDER BY DisplayOrdinal))
+                            ELSE TemplateCategory END AS TemplateCategory
+                FROM Templates WHERE IsDeleted = 0
+            """);
+        }
+        // Ranking an auto-named template, and finding the one of a given rank
+        createIndexIfMissing(conn, "Templates", "idx_templates_display_rank", "IsDeleted", "IsAutoNamed", "DisplayOrdinal");
+        // The highest ordinal, for the next new template
+        createIndexIfMissing(conn, "Templates", "idx_templates_display_ordinal", "DisplayOrdinal");
+    }
+
+    /**
+     * Ordinals come from an AUTO_INCREMENT table instead of MAX(DisplayOrdinal) + 1, which two
+     * uploads could read at the same time (see TemplateNames.nextDisplayOrdinal); a unique index
+     * makes any duplicate an error instead of two templates shown under one name.
+     */
+    private static void createTemplateOrdinalSequence(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            boolean duplicates;
+            try (ResultSet rs = stmt.executeQuery("""
+                SELECT EXISTS (SELECT 1 FROM Templates WHERE DisplayOrdinal IS NOT NULL
+                               GROUP BY DisplayOrdinal HAVING COUNT(*) > 1)
+            """)) {
+                duplicates = rs.next() && rs.getBoolean(1);
+            }
+            // Only possible from concurrent renames before this migration; the order is kept
+            if (duplicates) {
+                stmt.executeUpdate("""
+                    UPDATE Templates t
+                    JOIN (SELECT TemplateID, ROW_NUMBER() OVER (ORDER BY DisplayOrdinal, TemplateID) AS Ordinal
+                          FROM Templates WHERE DisplayOrdinal IS NOT NULL) n
+                      ON n.TemplateID = t.TemplateID
+                    SET t.DisplayOrdinal = n.Ordinal
+                """);
+            }
+            if (indexExists(conn, "Templates", "idx_templates_display_ordinal")) {
+                stmt.executeUpdate("ALTER TABLE Templates DROP INDEX idx_templates_display_ordinal");
+            }
+            if (!indexExists(conn, "Templates", "uq_templates_display_ordinal")) {
+                stmt.executeUpdate("CREATE UNIQUE INDEX uq_templates_display_ordinal ON Templates (DisplayOrdinal)");
+            }
+            stmt.executeUpdate("""
+                CREATE TABLE IF NOT EXISTS TemplateOrdinalSequence (
+                    Ordinal INT NOT NULL AUTO_INCREMENT PRIMARY KEY
+                ) DEFAULT CHARSET = utf8mb4
+            """);
+            // Starts the sequence after the ordinals already given out; ignored on a re-run. Deleting
+            // the row later does not lower the AUTO_INCREMENT counter
+            stmt.executeUpdate("""
+                INSERT IGNORE INTO TemplateOrdinalSequence (Ordinal)
+                SELECT MAX(DisplayOrdinal) FROM Templates HAVING MAX(DisplayOrdinal) IS NOT NULL
+            """);
+        }
+    }
+
+    private static void addColumnIfMissing(Connection conn, String table, String column, String definition) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getColumns(conn.getCatalog(), null, table, column)) {
+            if (rs.next()) {
+                return;
+            }
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        }
+    }
+
+    /**
+     * Creates the index unless some index of the table already starts with the same columns, such
+     * as the one MySQL adds for a foreign key. Text columns, and VARCHARs too long for an InnoDB key,
+     * are indexed on a prefix, which is still used for equality lookups.
+     */
+    private static void createIndexIfMissing(Connection conn, String table, String indexName, String... columns) throws SQLException {
+        Map<String, List<String>> existing = new HashMap<>();
+        String sql = """
+            SELECT INDEX_NAME, COLUMN_NAME FROM information_schema.STATISTICS
+            WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? ORDER BY INDEX_NAME, SEQ_IN_INDEX
+        """;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, table);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    existing.computeIfAbsent(rs.getString(1), k -> new ArrayList<>()).add(rs.getString(2).toLowerCase());
+                }
+            }
+        }
+        List<String> wanted = new ArrayList<>();
+        for (String column : columns) {
+            wanted.add(column.toLowerCase());
+        }
+        List<String> primaryKey = existing.getOrDefault("PRIMARY", List.of());
+        for (List<String> indexColumns : existing.values()) {
+            // InnoDB secondary indexes end in the primary key columns without listing them
+            List<String> effective = new ArrayList<>(indexColumns);
+            for (String column : primaryKey) {
+                if (!effective.contains(column)) {
+                    effective.add(column);
+                }
+            }
+            if (effective.size() >= wanted.size() && effective.subList(0, wanted.size()).equals(wanted)) {
+                return;
+            }
+        }
+
+        List<String> keyParts = new ArrayList<>();
+        for (String column : columns) {
+            keyParts.add(column + prefixLength(conn, table, column));
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE INDEX " + indexName + " ON " + table + " (" + String.join(", ", keyParts) + ")");
+        }
+        logger.info("Created index {} on {} {}", indexName, table, Arrays.toString(columns));
+    }
+
+    // InnoDB keys are at most 3072 bytes, 768 utf8mb4 characters; longer columns get a 255-character prefix
+    private static String prefixLength(Connection conn, String table, String column) throws SQLException {
+        String sql = """
+            SELECT DATA_TYPE, CHARACTER_MAXIMUM_LENGTH FROM information_schema.COLUMNS
+            WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = ?
+        """;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, table);
+            pstmt.setString(2, column);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("Column " + table + "." + column + " does not exist");
+                }
+                String type = rs.getString(1).toLowerCase();
+                long length = rs.getLong(2);
+                if (type.endsWith("text") || type.endsWith("blob") || (type.equals("varchar") && length > 768)) {
+                    return "(255)";
+                }
+                return "";
+            }
+        }
+    }
+
+    private static boolean indexExists(Connection conn, String table, String indexName) throws SQLException {
+        String sql = """
+            SELECT 1 FROM information_schema.STATISTICS
+            WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND INDEX_NAME = ?
+        """;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, table);
+            pstmt.setString(2, indexName);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static boolean acquireLock(Connection conn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            pstmt.setString(1, LOCK_NAME);
+            pstmt.setInt(2, LOCK_TIMEOUT_SECONDS);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private static void releaseLock(Connection conn) {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            pstmt.setString(1, LOCK_NAME);
+            pstmt.executeQuery().close();
+        } catch (SQLException e) {
+            logger.warn("Could not release schema migration lock", e);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Display names of templates. A template created by an upload is auto-named: it keeps the
+ * DisplayOrdinal it was given at creation, and its name "Template Type N" is computed when read,
+ * N being its rank among the live auto-named templates. Deleting or renaming a template therefore
+ * only writes that template's row, and the numbers of the others close the gap by themselves.
+ * A template renamed by a user keeps that name in TemplateCategory. Listings read the view
+ * TemplateDisplayNames, whose TemplateCategory column holds the name as shown.
+ */
+public final class TemplateNames {
+
+    public static final String AUTO_NAME_PREFIX = "Template Type ";
+
+    private TemplateNames() {
+    }
+
+    public static String autoName(int rank) {
+        return AUTO_NAME_PREFIX + rank;
+    }
+
+    /** N for a name of the form "Template Type N", or -1 for any other name. */
+    public static int autoNameRank(String name) {
+        if (name == null || !name.startsWith(AUTO_NAME_PREFIX)) {
+            return -1;
+        }
+        String number = name.substring(AUTO_NAME_PREFIX.length());
+        if (number.isEmpty() || number.length() > 9 || number.charAt(0) == '0'
+                || !number.chars().allMatch(c -> c >= '0' && c <= '9')) {
+            return -1;
+        }
+        return Integer.parseInt(number);
+    }
+
+    /** The live template shown under {@code displayName}, or -1 if there is none. */
+    public static int findTemplateId(Connection conn, String displayName) throws SQLException {
+        int rank = autoNameRank(displayName);
+        String sql = rank > 0
+                ? "SELECT TemplateID FROM Templates WHERE IsDeleted = 0 AND IsAutoNamed = 1 ORDER BY DisplayOrdinal LIMIT 1 OFFSET ?"
+                : "SELECT TemplateID FROM Templates WHERE TemplateCategory = ? AND IsDeleted = 0 AND IsAutoNamed = 0";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            if (rank > 0) {
+                pstmt.setInt(1, rank - 1);
+            } else {
+                pstmt.setString(1, displayName);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt("TemplateID") : -1;
+            }
+        }
+    }
+
+    /** The name the template is currently shown under, or null if it does not exist or is deleted. */
+    public static String displayName(Connection conn, int templateId) throws SQLException {
+        String sql = """
+            SELECT t.IsAutoNamed, t.TemplateCategory,
+                   (SELECT COUNT(*) FROM Templates o
+                    WHERE o.IsDeleted = 0 AND o.IsAutoNamed = 1 AND o.DisplayOrdinal <= t.DisplayOrdinal) AS AutoRank
+            FROM Templates t WHERE t.TemplateID = ? AND t.IsDeleted = 0
+        """;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, templateId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return rs.getBoolean("IsAutoNamed") ? autoName(rs.getInt("AutoRank")) : rs.getString("TemplateCategory");
+            }
+        }
+    }
+
+    /**
+     * Ordinal for a template that becomes auto-named; later than every existing one, so it is
+     * numbered last. Taken from the AUTO_INCREMENT of TemplateOrdinalSequence, which hands every
+     * caller, in this process or another, a distinct value in one insert. Unlike a counter row, it
+     * is not locked until the caller's transaction ends, so uploads creating templates never wait on
+     * each other; an ordinal lost to a rollback only leaves a gap. The inserted row is deleted again
+     * once its key is read, so the table stays empty; the counter itself does not go back, as
+     * MySQL 8 keeps AUTO_INCREMENT values across restarts.
+     */
+    public static int nextDisplayOrdinal(Connection conn) throws SQLException {
+        int ordinal;
+        try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO TemplateOrdinalSequence () VALUES ()", Statement.RETURN_GENERATED_KEYS)) {
+            pstmt.executeUpdate();
+            try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                if (!rs.next()) {
+                    throw new SQLException("Failed to allocate a template display ordinal.");
+                }
+                ordinal = rs.getInt(1);
+            }
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM TemplateOrdinalSequence WHERE Ordinal = ?")) {
+            pstmt.setInt(1, ordinal);
+            pstmt.executeUpdate();
+        }
+        return ordinal;
+    }
+}
@@ -154,7 +154,7 @@ document.addEventListener('DOMContentLoaded', function() {
             <form id="uploadForm" enctype="multipart/form-data">
                 <div class="file-upload-wrapper mb-3">
                     <label class="file-input-custom">
-                        <input type="file" id="fileInput" name="files" accept=".xlsx" multiple>
+                        <input type="file" id="fileInput" name="files" accept=".xlsx,.zip" multiple>
                         <div class="file-input-content">
                             <i class="bi bi-file-earmark-arrow-up upload-icon"></i>
                             <span class="upload-text">Choose Excel File(s)</span>
@@ -221,7 +221,8 @@ document.addEventListener('DOMContentLoaded', function() {
 
         let allFilesValid = true;
         for (let i = 0; i < files.length; i++) {
-            if (!files[i].name.toLowerCase().endsWith('.xlsx')) {
+            const name = files[i].name.toLowerCase();
+            if (!name.endsWith('.xlsx') && !name.endsWith('.zip')) {
                 allFilesValid = false;
                 break;
             }
@@ -230,7 +231,7 @@ document.addEventListener('DOMContentLoaded', function() {
         if (!allFilesValid) {
             fileInputWrapper.classList.add('shake-red-neon');
             uploadText.style.color = '#ff4d4d';
-            uploadText.textContent = 'Only .xlsx files are allowed.';
+            uploadText.textContent = 'Only .xlsx or .zip files are allowed.';
             setTimeout(() => {
                 fileInputWrapper.classList.remove('shake-red-neon');
                 uploadText.style.color = '';
@@ -305,7 +306,9 @@ document.addEventListener('DOMContentLoaded', function() {
 
             uploadedFilesInfo.forEach(fileInfo => {
                 const li = document.createElement('li');
-                li.textContent = `• ${fileInfo.fileName} (Type: ${fileInfo.templateCategory})`;
+                // Unchanged files were already stored with identical content and were not re-imported
+                const unchangedNote = fileInfo.unchanged ? ' - unchanged, already up to date' : '';
+                li.textContent = `• ${fileInfo.fileName} (Type: ${fileInfo.templateCategory})${unchangedNote}`;
                 ul.appendChild(li);
             });
             fileListDiv.appendChild(ul);
@@ -334,29 +337,79 @@ document.addEventListener('DOMContentLoaded', function() {
         modal.style.display = 'flex';
 
         const totalFiles = files.length;
-        let simulatedProcessedCount = 0;
-        let intervalId;
-        const timePerFileMs = 700;
-
-        function updateProgressMessage() {
-            let message;
-            if (simulatedProcessedCount < totalFiles) {
-                message = `Processing file ${simulatedProcessedCount + 1} of ${totalFiles}...`;
-            } else {
-                message = `Finalizing upload...`;
-            }
-            modalContent.innerHTML = `<h5>${message} <span class="spinner-border spinner-border-sm text-info" role="status" aria-hidden="true"></span></h5><p>Please wait. Do not close this window.</p>`;
+        const pollIntervalMs = 1000;
+
+        function updateProgressMessage(message, detail = 'Please wait. Do not close this window.') {
+            modalContent.innerHTML = `<h5><span class="progress-text"></span> <span class="spinner-border spinner-border-sm text-info" role="status" aria-hidden="true"></span></h5><p class="progress-detail"></p>`;
+            // File names come from the user, so they are set as text
+            modalContent.querySelector('.progress-text').textContent = message;
+            modalContent.querySelector('.progress-detail').textContent = detail;
             modal.style.display = 'flex';
         }
 
-        updateProgressMessage();
-
-        intervalId = setInterval(() => {
-            simulatedProcessedCount++;
-            if (simulatedProcessedCount <= totalFiles) {
-                updateProgressMessage();
+        function resetUploadForm() {
+            const uploadForm = document.getElementById('uploadForm');
+            if (uploadForm) {
+                uploadForm.reset();
+                const uploadText = document.querySelector('#uploadForm .upload-text');
+                if (uploadText) uploadText.textContent = 'Choose Excel File(s)';
+                const fileInputCustom = document.querySelector('#uploadForm .file-input-custom');
+                if (fileInputCustom) fileInputCustom.classList.remove('file-selected');
             }
-        }, timePerFileMs);
+        }
+
+        // The server answers the upload with a job id right away; progress is read from /uploadStatus
+        function pollUploadStatus(jobId) {
+            fetch(`/ExcelUploader/uploadStatus?jobId=${encodeURIComponent(jobId)}`, { cache: 'no-cache' })
+            .then(response => {
+                if (!response.ok) {
+                    return response.json().then(errorData => {
+                        throw new Error(errorData.message || `Upload status failed: HTTP ${response.status}`);
+                    });
+                }
+                return response.json();
+            })
+            .then(job => {
+                if (job.state !== 'done') {
+                    // Several files of one upload are processed at the same time
+                    const files = job.files || [];
+                    const processing = files.filter(f => f.state === 'processing');
+                    const finished = files.filter(f => f.state === 'done' || f.state === 'failed').length;
+                    if (processing.length > 0 || finished > 0) {
+                        const sheetsStored = files.reduce((sum, f) => sum + f.sheetsStored, 0);
+                        const rowsPersisted = files.reduce((sum, f) => sum + f.rowsPersisted, 0);
+                        updateProgressMessage(`Processed ${finished} of ${files.length} file(s), ${processing.length} in progress...`,
+                            `${sheetsStored} sheet(s) and ${rowsPersisted} rows saved so far. Please wait.`);
+                    } else {
+                        updateProgressMessage('Waiting for the server to start processing...');
+                    }
+                    setTimeout(() => pollUploadStatus(jobId), pollIntervalMs);
+                    return;
+                }
+
+                const failedFiles = (job.files || []).filter(f => f.state === 'failed');
+                if (job.uploadedFilesCount > 0) {
+                    resetUploadForm();
+                    showUploadSuccessModal(job.uploadedFilesCount, job.uploadedFilesInfo);
+                    if (failedFiles.length > 0) {
+                        const failedNote = document.createElement('p');
+                        failedNote.className = 'text-danger';
+                        failedNote.textContent = `${failedFiles.length} file(s) could not be processed: ` +
+                            failedFiles.map(f => f.fileName).join(', ');
+                        modalContent.insertBefore(failedNote, modalContent.lastElementChild);
+                    }
+                } else {
+                    const reason = failedFiles.length > 0 && failedFiles[0].error ? `: ${failedFiles[0].error}` : '.';
+                    throw new Error(`Upload failed${reason}`);
+                }
+            })
+            .catch(error => {
+                console.error('Upload error:', error);
+                showMessage('error', error.message || 'An unexpected error occurred during upload.', false);
+            });
+        }
+
+        updateProgressMessage(`Sending ${totalFiles} file(s)...`);
 
         const formData = new FormData();
         for (let i = 0; i < files.length; i++) {
@@ -368,31 +421,25 @@ document.addEventListener('DOMContentLoaded', function() {
             body: formData
         })
         .then(response => {
-            clearInterval(intervalId);
             if (!response.ok) {
                 return response.json().then(errorData => {
+                    // Files queued before the failure are still processed; follow them like an accepted upload
+                    if (errorData.jobId) {
+                        return errorData;
+                    }
                     throw new Error(errorData.message || `Upload failed: HTTP ${response.status}`);
                 });
             }
             return response.json();
         })
         .then(data => {
-            if (data.status === 'success') {
-                const uploadForm = document.getElementById('uploadForm');
-                if (uploadForm) {
-                    uploadForm.reset();
-                    const uploadText = document.querySelector('#uploadForm .upload-text');
-                    if (uploadText) uploadText.textContent = 'Choose Excel File(s)';
-                    const fileInputCustom = document.querySelector('#uploadForm .file-input-custom');
-                    if (fileInputCustom) fileInputCustom.classList.remove('file-selected');
-                }
-                showUploadSuccessModal(data.uploadedFilesCount, data.uploadedFilesInfo);
+            if (data.status === 'accepted' || data.jobId) {
+                pollUploadStatus(data.jobId);
             } else {
                 throw new Error(data.message || 'Upload failed.');
             }
         })
         .catch(error => {
-            clearInterval(intervalId);
             console.error('Upload error:', error);
             showMessage('error', error.message || 'An unexpected error occurred during upload.', false);
         });
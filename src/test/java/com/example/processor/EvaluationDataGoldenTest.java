@@ -0,0 +1,110 @@
+package com.example.processor;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the evaluation rows ExcelProcessor extracts from the fixture workbooks with the rows
+ * the sheet-by-sheet extractEvaluationData produced before it became a single pass. Each fixture
+ * is read both as a DOM workbook and with StreamingWorkbookReader.
+ *
+ * Run with src/main/java, src/test/resources and WEB-INF/lib on the classpath; exits with
+ * status 1 on the first difference.
+ */
+public class EvaluationDataGoldenTest {
+
+    private static final String[] FIXTURES = {"evaluation-golden-1", "evaluation-golden-2"};
+
+    public static void main(String[] args) throws Exception {
+        int failures = 0;
+        for (String fixture : FIXTURES) {
+            String expected = resource(fixture + ".expected.tsv");
+            Path workbook = Files.createTempFile(fixture, ".xlsx");
+            try {
+                try (InputStream in = EvaluationDataGoldenTest.class.getResourceAsStream(fixture + ".xlsx")) {
+                    Files.copy(in, workbook, StandardCopyOption.REPLACE_EXISTING);
+                }
+                failures += compare(fixture + " (DOM)", expected, extractDom(workbook));
+                failures += compare(fixture + " (streaming)", expected, extractStreaming(workbook));
+            } finally {
+                Files.deleteIfExists(workbook);
+            }
+        }
+        if (failures > 0) {
+            System.exit(1);
+        }
+        System.out.println("All evaluation data matches the golden output.");
+    }
+
+    private static String extractDom(Path workbook) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        try (XSSFWorkbook wb = new XSSFWorkbook(workbook.toFile())) {
+            CellNormalizer normalizer = new CellNormalizer(wb, false);
+            for (Sheet sheet : wb) {
+                appendSheet(sb, ExcelProcessor.toSheetGrid(sheet, normalizer));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String extractStreaming(Path workbook) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        try (StreamingWorkbookReader reader = new StreamingWorkbookReader(workbook.toFile(), false)) {
+            for (int i = 0; i < reader.getSheetNames().size(); i++) {
+                appendSheet(sb, reader.readSheet(i));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendSheet(StringBuilder sb, SheetGrid grid) {
+        List<Map<String, String>> evalData = ExcelProcessor.parseSheet(grid, null).evalData;
+        sb.append('[').append(grid.getSheetName()).append("]\n");
+        for (Map<String, String> entry : evalData) {
+            sb.append(escape(entry.get("MainItem"))).append('\t')
+              .append(escape(entry.get("SubItem"))).append('\t')
+              .append(escape(entry.get("Evaluation"))).append('\t')
+              .append(escape(entry.get("Comment"))).append('\n');
+        }
+    }
+
+    private static int compare(String name, String expected, String actual) {
+        String[] expectedLines = expected.split("\r?\n");
+        String[] actualLines = actual.split("\n");
+        for (int i = 0; i < Math.max(expectedLines.length, actualLines.length); i++) {
+            String e = i < expectedLines.length ? expectedLines[i] : "<end of output>";
+            String a = i < actualLines.length ? actualLines[i] : "<end of output>";
+            if (!e.equals(a)) {
+                System.out.println("FAIL " + name + " line " + (i + 1) + "\n  expected: " + e + "\n  actual:   " + a);
+                return 1;
+            }
+        }
+        System.out.println("OK   " + name + ": " + actualLines.length + " lines");
+        return 0;
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "\\N";
+        }
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String resource(String name) throws IOException {
+        try (InputStream in = EvaluationDataGoldenTest.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IOException("Missing test resource " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.util;
+
+import com.example.processor.ExcelProcessor;
+import com.example.processor.ExcelProcessor.TemplateCreationResult;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Allocates display ordinals and creates templates from many threads at once against the
+ * database of {@link DatabaseConnection}, and checks that no two callers got the same ordinal
+ * and no two new templates are shown under the same "Template Type N" name. The templates it
+ * creates are deleted again. nextDisplayOrdinal deletes each TemplateOrdinalSequence row it
+ * inserts, which is checked too; the AUTO_INCREMENT counter does not go back, so the ordinals
+ * handed out here only leave gaps.
+ *
+ * A main() program like the other tests, as the project has no test runner. Needs a running MySQL
+ * server. Threads and rounds can be set with -Dthreads and -Drounds; exits with status 1 on a
+ * failed check.
+ */
+public class TemplateOrdinalConcurrencyTest {
+
+    private static final int THREADS = Integer.getInteger("threads", 16);
+    private static final int ROUNDS = Integer.getInteger("rounds", 50);
+
+    public static void main(String[] args) throws Exception {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            SchemaMigrations.migrate(conn);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        int failures = 0;
+        try {
+            failures += allocateOrdinals(executor);
+            failures += createTemplates(executor);
+        } finally {
+            executor.shutdownNow();
+            DatabaseConnection.shutdown();
+        }
+        if (failures > 0) {
+            System.exit(1);
+        }
+        System.out.println("All ordinals and template names are distinct.");
+    }
+
+    // Every thread takes ROUNDS ordinals, every third one inside a transaction that is rolled back
+    private static int allocateOrdinals(ExecutorService executor) throws Exception {
+        Set<Integer> ordinals = ConcurrentHashMap.newKeySet();
+        List<Integer> duplicates = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch start = new CountDownLatch(1);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            tasks.add(() -> {
+                try (Connection conn = DatabaseConnection.getConnection()) {
+                    start.await();
+                    for (int i = 0; i < ROUNDS; i++) {
+                        boolean rollBack = i % 3 == 0;
+                        conn.setAutoCommit(!rollBack);
+                        int ordinal = TemplateNames.nextDisplayOrdinal(conn);
+                        if (rollBack) {
+                            conn.rollback();
+                            conn.setAutoCommit(true);
+                        }
+                        if (!ordinals.add(ordinal)) {
+                            duplicates.add(ordinal);
+                        }
+                    }
+                }
+                return null;
+            });
+        }
+        runTogether(executor, tasks, start);
+        return check("nextDisplayOrdinal", THREADS * ROUNDS + " ordinals", duplicates)
+                + check("sequence rows", "none left for " + ordinals.size() + " ordinals", leftoverSequenceRows(ordinals));
+    }
+
+    private static List<Integer> leftoverSequenceRows(Set<Integer> ordinals) throws SQLException {
+        List<Integer> leftover = new ArrayList<>();
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT Ordinal FROM TemplateOrdinalSequence");
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                if (ordinals.contains(rs.getInt(1))) {
+                    leftover.add(rs.getInt(1));
+                }
+            }
+        }
+        return leftover;
+    }
+
+    // One upload per thread, each with its own sheet name so that each creates a template
+    private static int createTemplates(ExecutorService executor) throws Exception {
+        String run = Long.toString(System.currentTimeMillis(), 36);
+        List<Integer> templateIds = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch start = new CountDownLatch(1);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            String sheetName = "concurrency-" + run + "-" + t;
+            byte[] workbook = workbook(sheetName);
+            tasks.add(() -> {
+                try (Connection conn = DatabaseConnection.getConnection()) {
+                    start.await();
+                    TemplateCreationResult result = ExcelProcessor.processExcelFile(conn, new ByteArrayInputStream(workbook), sheetName + ".xlsx");
+                    templateIds.add(result.templateId);
+                }
+                return null;
+            });
+        }
+
+        try {
+            runTogether(executor, tasks, start);
+            return checkTemplates(templateIds);
+        } finally {
+            deleteTemplates(templateIds);
+        }
+    }
+
+    private static int checkTemplates(List<Integer> templateIds) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            Map<Integer, String> names = new HashMap<>();
+            Set<Integer> ordinals = new HashSet<>();
+            List<Object> problems = new ArrayList<>();
+            String in = "(" + String.join(",", Collections.nCopies(templateIds.size(), "?")) + ")";
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "SELECT T.TemplateID, T.DisplayOrdinal, N.TemplateCategory FROM Templates T " +
+                    "JOIN TemplateDisplayNames N ON N.TemplateID = T.TemplateID WHERE T.TemplateID IN " + in)) {
+                for (int i = 0; i < templateIds.size(); i++) {
+                    pstmt.setInt(i + 1, templateIds.get(i));
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        if (!ordinals.add(rs.getInt("DisplayOrdinal"))) {
+                            problems.add("ordinal " + rs.getInt("DisplayOrdinal"));
+                        }
+                        String name = rs.getString("TemplateCategory");
+                        if (names.containsValue(name)) {
+                            problems.add("name " + name);
+                        }
+                        names.put(rs.getInt("TemplateID"), name);
+                    }
+                }
+            }
+            if (names.size() != THREADS) {
+                problems.add("only " + names.size() + " of " + THREADS + " templates are listed");
+            }
+            for (Map.Entry<Integer, String> entry : names.entrySet()) {
+                String shown = TemplateNames.displayName(conn, entry.getKey());
+                if (!entry.getValue().equals(shown) || TemplateNames.findTemplateId(conn, shown) != entry.getKey()) {
+                    problems.add("template " + entry.getKey() + " is listed as " + entry.getValue() + " but resolves as " + shown);
+                }
+            }
+            return check("template creation", THREADS + " templates", problems);
+        }
+    }
+
+    private static void runTogether(ExecutorService executor, List<Callable<Void>> tasks, CountDownLatch start) throws Exception {
+        List<Future<Void>> futures = new ArrayList<>();
+        for (Callable<Void> task : tasks) {
+            futures.add(executor.submit(task));
+        }
+        start.countDown();
+        // Waits for every task before reporting a failure, so cleanup does not race with them
+        ExecutionException failure = null;
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                failure = failure != null ? failure : e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static int check(String name, String what, List<?> problems) {
+        if (problems.isEmpty()) {
+            System.out.println("OK   " + name + ": " + what);
+            return 0;
+        }
+        System.out.println("FAIL " + name + ": " + problems);
+        return 1;
+    }
+
+    private static byte[] workbook(String sheetName) throws Exception {
+        try (XSSFWorkbook wb = new XSSFWorkbook(); ByteArrayOutputStream bytes = new ByteArrayOutputStream()) {
+            XSSFSheet sheet = wb.createSheet(sheetName);
+            sheet.createRow(0).createCell(0).setCellValue("会社名");
+            sheet.getRow(0).createCell(1).setCellValue(sheetName);
+            wb.write(bytes);
+            return bytes.toByteArray();
+        }
+    }
+
+    private static void deleteTemplates(List<Integer> templateIds) throws SQLException {
+        if (templateIds.isEmpty()) {
+            return;
+        }
+        String in = "(" + String.join(",", Collections.nCopies(templateIds.size(), "?")) + ")";
+        String responses = "SELECT ResponseID FROM Responses WHERE TemplateID IN " + in;
+        String[] statements = {
+            "DELETE FROM EvaluationData WHERE ResponseID IN (" + responses + ")",
+            "DELETE FROM ResponseMetadata WHERE ResponseID IN (" + responses + ")",
+            "DELETE FROM Responses WHERE TemplateID IN " + in,
+            "DELETE FROM Templates WHERE TemplateID IN " + in
+        };
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            for (String sql : statements) {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    for (int i = 0; i < templateIds.size(); i++) {
+                        pstmt.setInt(i + 1, templateIds.get(i));
+                    }
+                    pstmt.executeUpdate();
+                }
+            }
+        }
+    }
+}